@@ -0,0 +1,109 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.googlecode.andoku.model.Difficulty;
+import com.googlecode.andoku.model.Puzzle;
+import com.googlecode.andoku.transfer.PuzzleDecoder;
+
+/**
+ * The puzzles of one bundled asset folder, e.g. <code>squiggly_x_3.adk</code>. Benchmarks take
+ * one puzzle per invocation and cycle through the whole folder.
+ */
+@State(Scope.Thread)
+public class CorpusState {
+	@Param( { "standard_n", "standard_x", "standard_h", "standard_p", "standard_c", "squiggly_n",
+			"squiggly_x", "squiggly_h", "squiggly_p", "squiggly_c" })
+	public String type;
+
+	@Param( { "1", "2", "3", "4", "5" })
+	public int difficulty;
+
+	public String[] encoded;
+	public Puzzle[] puzzles;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void load() throws IOException {
+		List<String> lines = readPuzzleFile(type + "_" + difficulty + ".adk");
+
+		encoded = lines.toArray(new String[lines.size()]);
+		puzzles = new Puzzle[encoded.length];
+		for (int i = 0; i < encoded.length; i++) {
+			puzzles[i] = PuzzleDecoder.decode(encoded[i]);
+		}
+
+		next = 0;
+	}
+
+	public Difficulty getDifficulty() {
+		return Difficulty.values()[difficulty - 1];
+	}
+
+	/**
+	 * Returns the index of the puzzle to use for the next invocation.
+	 */
+	public int nextIndex() {
+		final int index = next;
+		next = index + 1 == encoded.length ? 0 : index + 1;
+		return index;
+	}
+
+	private static List<String> readPuzzleFile(String fileName) throws IOException {
+		InputStream in = CorpusState.class.getResourceAsStream("/puzzles/" + fileName);
+		if (in == null)
+			throw new IOException("Puzzle file not found: " + fileName);
+
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, "US-ASCII"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.length() == 0 || line.charAt(0) == '#')
+					continue;
+
+				lines.add(line);
+			}
+		}
+		finally {
+			reader.close();
+		}
+
+		if (lines.isEmpty())
+			throw new IOException("No puzzles in " + fileName);
+
+		return lines;
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.googlecode.andoku.model.AndokuPuzzle;
+import com.googlecode.andoku.model.Puzzle;
+import com.googlecode.andoku.model.Solution;
+import com.googlecode.andoku.model.ValueSet;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmark {
+	// every n-th empty cell gets a wrong value so that checkForErrors finds both region and
+	// cell errors
+	private static final int WRONG_VALUE_INTERVAL = 7;
+
+	private AndokuPuzzle[] filledIn;
+
+	/**
+	 * Fills in all empty cells from the solution, with a few wrong values mixed in.
+	 */
+	@Setup(Level.Trial)
+	public void fillIn(CorpusState corpus) {
+		filledIn = new AndokuPuzzle[corpus.puzzles.length];
+		for (int i = 0; i < filledIn.length; i++) {
+			AndokuPuzzle puzzle = new AndokuPuzzle(corpus.type + "_" + i, corpus.puzzles[i], corpus
+					.getDifficulty());
+			if (!puzzle.computeSolution())
+				throw new IllegalStateException("Puzzle " + i + " has no solution");
+
+			Solution solution = puzzle.getSolution();
+			final int size = puzzle.getSize();
+			int empty = 0;
+			for (int row = 0; row < size; row++) {
+				for (int col = 0; col < size; col++) {
+					if (puzzle.isClue(row, col))
+						continue;
+
+					int value = solution.getValue(row, col);
+					if (empty++ % WRONG_VALUE_INTERVAL == 0)
+						value = (value + 1) % size;
+
+					puzzle.setValues(row, col, ValueSet.of(value));
+				}
+			}
+
+			filledIn[i] = puzzle;
+		}
+	}
+
+	@Benchmark
+	public Puzzle copy(CorpusState corpus) {
+		return new Puzzle(corpus.puzzles[corpus.nextIndex()]);
+	}
+
+	@Benchmark
+	public boolean checkForErrors(CorpusState corpus) {
+		return filledIn[corpus.nextIndex()].checkForErrors(true);
+	}
+}
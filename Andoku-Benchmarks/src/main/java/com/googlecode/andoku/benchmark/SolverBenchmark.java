@@ -0,0 +1,77 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.googlecode.andoku.model.Puzzle;
+import com.googlecode.andoku.solver.BitboardPuzzleSolver;
+import com.googlecode.andoku.solver.BrutePuzzleSolver;
+import com.googlecode.andoku.solver.DlxPuzzleSolver;
+import com.googlecode.andoku.solver.PuzzleSolver;
+import com.googlecode.andoku.solver.SingleSolutionReporter;
+
+/**
+ * Time to find the first solution of a puzzle, which is what
+ * {@link com.googlecode.andoku.model.AndokuPuzzle#computeSolution()} does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverBenchmark {
+	private final PuzzleSolver dlxSolver = new DlxPuzzleSolver();
+	private final PuzzleSolver bruteSolver = new BrutePuzzleSolver();
+	private final PuzzleSolver bitboardSolver = new BitboardPuzzleSolver();
+
+	@Benchmark
+	public Puzzle dlx(CorpusState corpus) {
+		return solve(dlxSolver, corpus);
+	}
+
+	@Benchmark
+	public Puzzle brute(CorpusState corpus) {
+		return solve(bruteSolver, corpus);
+	}
+
+	@Benchmark
+	public Puzzle bitboard(CorpusState corpus) {
+		return solve(bitboardSolver, corpus);
+	}
+
+	private static Puzzle solve(PuzzleSolver solver, CorpusState corpus) {
+		SingleSolutionReporter reporter = new SingleSolutionReporter();
+		solver.solve(corpus.puzzles[corpus.nextIndex()], reporter);
+		return reporter.getSolution();
+	}
+}
@@ -53,6 +53,13 @@ public class AndokuClient {
 	public static final String KEY_AREAS = "areas";
 	public static final String KEY_EXTRA_REGIONS = "extraRegions";
 
+	public static final String PARAM_DUPLICATES = "duplicates";
+	public static final String DUPLICATES_ALLOW = "allow";
+	public static final String DUPLICATES_SKIP = "skip";
+	public static final String DUPLICATES_REPORT = "report";
+	// query parameter of the URI insertPuzzle() returns for a puzzle skipped as a duplicate
+	public static final String PARAM_SKIPPED = "skipped";
+
 	private static final String COL_ID = BaseColumns._ID;
 	private static final String COL_FOLDER_NAME = "name";
 
@@ -60,6 +67,8 @@ public class AndokuClient {
 	private static final String EXTRA_PUZZLE_URI = PACKAGE_NAME + ".puzzleUri";
 	private static final String EXTRA_START_PUZZLE = PACKAGE_NAME + ".start";
 
+	public static final int PUZZLES_PER_BULK_INSERT = 100;
+
 	private final ContentResolver contentResolver;
 	private final PackageManager packageManager;
 
@@ -163,6 +172,37 @@ public class AndokuClient {
 		return contentResolver.insert(CONTENT_URI, values);
 	}
 
+	/**
+	 * Deletes the specified folder if it contains neither puzzles nor sub-folders. Returns
+	 * <code>true</code> if the folder has been deleted. Older versions of Andoku cannot delete
+	 * folders; in that case the folder is kept and <code>false</code> is returned.
+	 */
+	public boolean deleteFolderIfEmpty(Uri folderUri) {
+		try {
+			return contentResolver.delete(folderUri, null, null) > 0;
+		}
+		catch (UnsupportedOperationException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns a folder URI that makes puzzle inserts handle duplicates as specified. A puzzle is
+	 * a duplicate if a puzzle with the same clues, areas and extra regions exists in any folder,
+	 * where puzzles that only differ by a relabeling of the digits or a symmetry of the grid count
+	 * as the same.
+	 * <ul>
+	 * <li>{@link #DUPLICATES_ALLOW}: insert duplicates anyway (default).</li>
+	 * <li>{@link #DUPLICATES_SKIP}: do not insert duplicates; insertPuzzle() returns the URI of
+	 * the existing puzzle with the query parameter {@link #PARAM_SKIPPED} and bulk inserts return
+	 * the number of puzzles actually inserted.</li>
+	 * <li>{@link #DUPLICATES_REPORT}: fail with an exception if a duplicate is encountered.</li>
+	 * </ul>
+	 */
+	public static Uri withDuplicatesMode(Uri folderUri, String mode) {
+		return folderUri.buildUpon().appendQueryParameter(PARAM_DUPLICATES, mode).build();
+	}
+
 	/**
 	 * Inserts a single puzzle into the specified folder.
 	 */
@@ -176,18 +216,28 @@ public class AndokuClient {
 	 * Bulk insert method to insert a list of puzzles into the specified folder.
 	 */
 	public Uri insertPuzzles(Uri folderUri, List<ContentValues> valuesList) {
-		return insertPuzzles0(folderUri, valuesList);
+		return insertPuzzles0(folderUri, valuesList, PUZZLES_PER_BULK_INSERT);
+	}
+
+	/**
+	 * Bulk insert method that writes <code>puzzlesPerBulkInsert</code> puzzles per round trip to
+	 * Andoku. Larger batches are faster but need more memory.
+	 */
+	public Uri insertPuzzles(Uri folderUri, List<ContentValues> valuesList,
+			int puzzlesPerBulkInsert) {
+		return insertPuzzles0(folderUri, valuesList, puzzlesPerBulkInsert);
 	}
 
 	/**
-	 * Bulk insert method that also registers a ContentObserver.
+	 * Bulk insert method that also registers a ContentObserver. The observer gets notified once
+	 * per batch of inserted puzzles.
 	 */
 	public Uri insertPuzzles(Uri folderUri, List<ContentValues> valuesList, ContentObserver observer) {
 		if (observer != null)
 			contentResolver.registerContentObserver(folderUri, true, observer);
 
 		try {
-			return insertPuzzles0(folderUri, valuesList);
+			return insertPuzzles0(folderUri, valuesList, PUZZLES_PER_BULK_INSERT);
 		}
 		finally {
 			if (observer != null)
@@ -195,25 +245,25 @@ public class AndokuClient {
 		}
 	}
 
-	private Uri insertPuzzles0(Uri folderUri, List<ContentValues> valuesList) {
+	private Uri insertPuzzles0(Uri folderUri, List<ContentValues> valuesList,
+			int puzzlesPerBulkInsert) {
 		if (valuesList.isEmpty())
 			throw new IllegalArgumentException();
 
-		Uri puzzlesUri = Uri.withAppendedPath(folderUri, PATH_PUZZLES);
-
-		ContentValues first = valuesList.get(0);
-		Uri puzzleUri = contentResolver.insert(puzzlesUri, first);
-
-		final int size = valuesList.size();
-		final int puzzlesPerBulkInsert = 100;
-		for (int idx = 1; idx < size; idx += puzzlesPerBulkInsert) {
-			int end = Math.min(idx + puzzlesPerBulkInsert, size);
+		PuzzleInserter inserter = createPuzzleInserter(folderUri, puzzlesPerBulkInsert);
+		for (ContentValues values : valuesList)
+			inserter.add(values);
+		inserter.flush();
 
-			List<ContentValues> subList = valuesList.subList(idx, end);
-			ContentValues[] valuesArray = subList.toArray(new ContentValues[subList.size()]);
-			contentResolver.bulkInsert(puzzlesUri, valuesArray);
-		}
+		return inserter.getFirstPuzzleUri();
+	}
 
-		return puzzleUri;
+	/**
+	 * Returns a {@link PuzzleInserter} that inserts puzzles into the specified folder in batches
+	 * of the given size. Useful for importing large collections without holding all of them in
+	 * memory.
+	 */
+	public PuzzleInserter createPuzzleInserter(Uri folderUri, int batchSize) {
+		return new PuzzleInserter(contentResolver, folderUri, batchSize);
 	}
 }
@@ -0,0 +1,110 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.client;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+
+/**
+ * Inserts a stream of puzzles into a folder in fixed-size batches so that only one batch has to
+ * be kept in memory at a time. Obtain an instance from
+ * {@link AndokuClient#createPuzzleInserter(Uri, int)}.
+ */
+public class PuzzleInserter {
+	private final ContentResolver contentResolver;
+	private final Uri puzzlesUri;
+
+	private final ContentValues[] batch;
+	private int batchSize = 0;
+
+	private Uri firstPuzzleUri = null;
+	private int count = 0;
+
+	PuzzleInserter(ContentResolver contentResolver, Uri folderUri, int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException();
+
+		this.contentResolver = contentResolver;
+		this.puzzlesUri = Uri.withAppendedPath(folderUri, AndokuClient.PATH_PUZZLES);
+		this.batch = new ContentValues[batchSize];
+	}
+
+	/**
+	 * Adds a puzzle. The puzzle is written to the database once the current batch is full or
+	 * {@link #flush()} gets called.
+	 */
+	public void add(ContentValues values) {
+		// Only insert() reports the URI of a new puzzle, so puzzles are inserted one by one until
+		// the first one has actually been written. Puzzles skipped as duplicates come back marked
+		// with AndokuClient.PARAM_SKIPPED.
+		if (firstPuzzleUri == null) {
+			Uri puzzleUri = contentResolver.insert(puzzlesUri, values);
+			if (puzzleUri != null
+					&& puzzleUri.getQueryParameter(AndokuClient.PARAM_SKIPPED) == null) {
+				firstPuzzleUri = puzzleUri;
+				count++;
+			}
+			return;
+		}
+
+		batch[batchSize++] = values;
+		if (batchSize == batch.length)
+			flush();
+	}
+
+	/**
+	 * Writes all pending puzzles to the database.
+	 */
+	public void flush() {
+		if (batchSize == 0)
+			return;
+
+		ContentValues[] values = batch;
+		if (batchSize < batch.length) {
+			values = new ContentValues[batchSize];
+			System.arraycopy(batch, 0, values, 0, batchSize);
+		}
+
+		count += contentResolver.bulkInsert(puzzlesUri, values);
+
+		for (int i = 0; i < batchSize; i++)
+			batch[i] = null;
+		batchSize = 0;
+	}
+
+	/**
+	 * Returns the URI of the first puzzle that has been inserted or <code>null</code> if no puzzle
+	 * has been written to the database yet, for example because all puzzles were skipped as
+	 * duplicates.
+	 */
+	public Uri getFirstPuzzleUri() {
+		return firstPuzzleUri;
+	}
+
+	/**
+	 * Returns the number of puzzles that have been written to the database so far, not counting
+	 * skipped duplicates.
+	 */
+	public int getCount() {
+		return count;
+	}
+}
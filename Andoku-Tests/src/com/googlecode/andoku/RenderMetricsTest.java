@@ -0,0 +1,79 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku;
+
+import junit.framework.TestCase;
+
+public class RenderMetricsTest extends TestCase {
+	public void testPercentilesOverRollingWindow() throws Exception {
+		RenderMetrics metrics = new RenderMetrics(4);
+
+		// frames take 10, 20, ..., 60 us; only the last four stay in the window
+		for (int i = 1; i <= 6; i++) {
+			long t0 = i * 1000000L;
+			metrics.beginFrame(t0, 100);
+			metrics.endLayer(RenderMetrics.LAYER_BACKGROUND, t0 + i * 2000L);
+			metrics.endLayer(RenderMetrics.LAYER_VALUES, t0 + i * 10000L);
+			metrics.endFrame(t0 + i * 10000L, 100 + i);
+		}
+
+		assertEquals(6, metrics.getFrameCount());
+
+		assertEquals(30000L, metrics.getFrameNanos(0));
+		assertEquals(40000L, metrics.getFrameNanos(50));
+		assertEquals(60000L, metrics.getFrameNanos(90));
+		assertEquals(60000L, metrics.getFrameNanos(100));
+
+		assertEquals(8000L, metrics.getLayerNanos(RenderMetrics.LAYER_BACKGROUND, 50));
+		assertEquals(32000L, metrics.getLayerNanos(RenderMetrics.LAYER_VALUES, 50));
+		assertEquals(0L, metrics.getLayerNanos(RenderMetrics.LAYER_ERRORS, 100));
+
+		assertEquals(3L, metrics.getFrameAllocations(0));
+		assertEquals(6L, metrics.getFrameAllocations(100));
+	}
+
+	public void testLayerTimesAccumulateWithinFrame() throws Exception {
+		RenderMetrics metrics = new RenderMetrics(8);
+
+		metrics.beginFrame(0, 0);
+		metrics.endLayer(RenderMetrics.LAYER_GRID, 1000);
+		metrics.endLayer(RenderMetrics.LAYER_VALUES, 3000);
+		metrics.endLayer(RenderMetrics.LAYER_GRID, 7000);
+		metrics.endFrame(7000, 0);
+
+		assertEquals(5000L, metrics.getLayerNanos(RenderMetrics.LAYER_GRID, 50));
+		assertEquals(2000L, metrics.getLayerNanos(RenderMetrics.LAYER_VALUES, 50));
+		assertEquals(7000L, metrics.getFrameNanos(50));
+	}
+
+	public void testReset() throws Exception {
+		RenderMetrics metrics = new RenderMetrics(8);
+
+		metrics.beginFrame(0, 0);
+		metrics.endFrame(5000, 3);
+		metrics.reset();
+
+		assertEquals(0, metrics.getFrameCount());
+		assertEquals(0L, metrics.getFrameNanos(50));
+		assertEquals(0L, metrics.getFrameAllocations(100));
+		assertTrue(metrics.report().startsWith("frames: 0"));
+	}
+}
@@ -99,6 +99,85 @@ public class AndokuDatabasePuzzleTest extends AndroidTestCase {
 		assertEquals(clues5, db.loadPuzzle(folderId, 4).getClues());
 	}
 
+	public void testInsertPuzzlesBatch() throws Exception {
+		long folderId = db.createFolder("folder");
+
+		String clues1 = ".8.4.96536428...7.......8....7..5.42...7.1...85.6..1....6.......1...47362735.8.1.";
+		PuzzleInfo puzzle1 = new PuzzleInfo.Builder(clues1).build();
+		String clues2 = "63.2.8.1.2...5..891.9.6..3...8..6.5....187....6.5..9...9..7.1.681..2...5.2.4.3.97";
+		PuzzleInfo puzzle2 = new PuzzleInfo.Builder(clues2).build();
+		String clues3 = "...1...4.195..8...34..2.1.9...91.5..6.98.24.7..1.34...2.8.4..71...7..832.1...9...";
+		PuzzleInfo puzzle3 = new PuzzleInfo.Builder(clues3).build();
+
+		long id1 = db.insertPuzzle(folderId, puzzle1);
+
+		PuzzleInfo[] batch = { puzzle2, puzzle3, null };
+		db.insertPuzzles(folderId, batch, 2);
+
+		assertEquals(3, db.getNumberOfPuzzles(folderId));
+		assertEquals(0, db.getPuzzleNumber(folderId, id1));
+		assertEquals(clues1, db.loadPuzzle(folderId, 0).getClues());
+		assertEquals(clues2, db.loadPuzzle(folderId, 1).getClues());
+		assertEquals(clues3, db.loadPuzzle(folderId, 2).getClues());
+	}
+
+	public void testFindDuplicatePuzzle() throws Exception {
+		long folderId1 = db.createFolder("folder1");
+		long folderId2 = db.createFolder("folder2");
+
+		String clues = ".8.4.96536428...7.......8....7..5.42...7.1...85.6..1....6.......1...47362735.8.1.";
+		PuzzleInfo puzzle = new PuzzleInfo.Builder(clues).setName("first").build();
+		PuzzleInfo sameClues = new PuzzleInfo.Builder(clues).setName("second").build();
+		PuzzleInfo otherExtra = new PuzzleInfo.Builder(clues).setExtraRegions("X").build();
+
+		assertNull(db.findDuplicatePuzzle(puzzle));
+
+		long puzzleId = db.insertPuzzle(folderId1, puzzle);
+
+		long[] duplicate = db.findDuplicatePuzzle(sameClues);
+		assertNotNull(duplicate);
+		assertEquals(folderId1, duplicate[0]);
+		assertEquals(puzzleId, duplicate[1]);
+
+		assertNull(db.findDuplicatePuzzle(otherExtra));
+
+		db.insertPuzzles(folderId2, new PuzzleInfo[] { otherExtra }, 1);
+		assertEquals(folderId2, db.findDuplicatePuzzle(otherExtra)[0]);
+	}
+
+	public void testFindDuplicatePuzzleFindsEquivalentPuzzle() throws Exception {
+		long folderId = db.createFolder("folder");
+
+		String clues = ".8.4.96536428...7.......8....7..5.42...7.1...85.6..1....6.......1...47362735.8.1.";
+		// transposed and every digit d replaced by 10 - d
+		StringBuilder sb = new StringBuilder();
+		for (int row = 0; row < 9; row++) {
+			for (int col = 0; col < 9; col++) {
+				char c = clues.charAt(col * 9 + row);
+				sb.append(c == '.' ? c : (char) ('0' + 10 - (c - '0')));
+			}
+		}
+
+		PuzzleInfo puzzle = new PuzzleInfo.Builder(clues).build();
+		PuzzleInfo equivalent = new PuzzleInfo.Builder(sb.toString()).build();
+		assertEquals(puzzle.getFingerprint(), equivalent.getFingerprint());
+		assertTrue(puzzle.isEquivalent(equivalent));
+
+		long puzzleId = db.insertPuzzle(folderId, puzzle);
+
+		long[] duplicate = db.findDuplicatePuzzle(equivalent);
+		assertNotNull(duplicate);
+		assertEquals(puzzleId, duplicate[1]);
+	}
+
+	public void testNormalizeClues() throws Exception {
+		String clues = ".8.4.96536428...7.......8....7..5.42...7.1...85.6..1....6.......1...47362735.8.1.";
+		assertSame(clues, PuzzleInfo.Builder.normalizeClues(clues));
+		assertEquals(clues, PuzzleInfo.Builder.normalizeClues(" " + clues.replace('.', '0') + "\n"));
+		assertNull(PuzzleInfo.Builder.normalizeClues(clues.substring(1)));
+		assertNull(PuzzleInfo.Builder.normalizeClues(clues.replace('.', 'x')));
+	}
+
 	public void testGetPuzzleNumber() throws Exception {
 		long folderId = db.createFolder("folder");
 
@@ -139,6 +218,36 @@ public class AndokuDatabasePuzzleTest extends AndroidTestCase {
 		assertEquals(0, db.getNumberOfPuzzles(folderId));
 	}
 
+	public void testDeletePuzzleRenumbersFollowingPuzzles() throws Exception {
+		long folderId = db.createFolder("folder");
+
+		String clues1 = ".8.4.96536428...7.......8....7..5.42...7.1...85.6..1....6.......1...47362735.8.1.";
+		PuzzleInfo puzzle1 = new PuzzleInfo.Builder(clues1).build();
+		String clues2 = "63.2.8.1.2...5..891.9.6..3...8..6.5....187....6.5..9...9..7.1.681..2...5.2.4.3.97";
+		PuzzleInfo puzzle2 = new PuzzleInfo.Builder(clues2).build();
+		String clues3 = "...1...4.195..8...34..2.1.9...91.5..6.98.24.7..1.34...2.8.4..71...7..832.1...9...";
+		PuzzleInfo puzzle3 = new PuzzleInfo.Builder(clues3).build();
+		String clues4 = "..7....638.467.9...1..39..2..37..6..7..4.1..5..8..61..6..21..9...1.635.839....7..";
+		PuzzleInfo puzzle4 = new PuzzleInfo.Builder(clues4).build();
+
+		long id1 = db.insertPuzzle(folderId, puzzle1);
+		long id2 = db.insertPuzzle(folderId, puzzle2);
+		long id3 = db.insertPuzzle(folderId, puzzle3);
+
+		db.deletePuzzle(id2);
+
+		assertEquals(2, db.getNumberOfPuzzles(folderId));
+		assertEquals(0, db.getPuzzleNumber(folderId, id1));
+		assertEquals(-1, db.getPuzzleNumber(folderId, id2));
+		assertEquals(1, db.getPuzzleNumber(folderId, id3));
+		assertEquals(clues1, db.loadPuzzle(folderId, 0).getClues());
+		assertEquals(clues3, db.loadPuzzle(folderId, 1).getClues());
+
+		long id4 = db.insertPuzzle(folderId, puzzle4);
+		assertEquals(2, db.getPuzzleNumber(folderId, id4));
+		assertEquals(clues4, db.loadPuzzle(folderId, 2).getClues());
+	}
+
 	public void testPuzzlesBelongToFolder() throws Exception {
 		long folderId1 = db.createFolder("folder1");
 		long folderId2 = db.createFolder("folder2");
@@ -26,8 +26,11 @@ import android.test.AndroidTestCase;
 import com.googlecode.andoku.TickListener;
 import com.googlecode.andoku.TickTimer;
 import com.googlecode.andoku.model.AndokuPuzzle;
+import com.googlecode.andoku.model.Puzzle;
+import com.googlecode.andoku.model.Solution;
 import com.googlecode.andoku.model.ValueSet;
 import com.googlecode.andoku.source.PuzzleSourceIds;
+import com.googlecode.andoku.transfer.PuzzleDecoder;
 import com.googlecode.andoku.util.MockPuzzleSource;
 
 public class AndokuDatabaseSaveGameTest extends AndroidTestCase {
@@ -65,6 +68,41 @@ public class AndokuDatabaseSaveGameTest extends AndroidTestCase {
 		assertEquals(700, timerLoad.getTime());
 	}
 
+	public void testSaveGameReplacesExistingGame() throws Exception {
+		int number = 0;
+		AndokuPuzzle puzzle = MockPuzzleSource.createPuzzle(number);
+		TickTimer timer = new TickTimer(new MockTickListener());
+		timer.setTime(700);
+
+		PuzzleId puzzleId = new PuzzleId(MockPuzzleSource.SOURCE_ID, number);
+		db.saveGame(puzzleId, puzzle, timer);
+
+		Cursor cursor = db.findAllGames();
+		assertTrue(cursor.moveToNext());
+		long rowId = cursor.getLong(AndokuDatabase.IDX_GAME_ID);
+		long created = cursor.getLong(AndokuDatabase.IDX_GAME_CREATED_DATE);
+		cursor.close();
+
+		Thread.sleep(10);
+
+		puzzle.setValues(0, 1, ValueSet.of(7));
+		timer.setTime(800);
+		db.saveGame(puzzleId, puzzle, timer);
+
+		cursor = db.findAllGames();
+		assertTrue(cursor.moveToNext());
+		assertEquals(rowId, cursor.getLong(AndokuDatabase.IDX_GAME_ID));
+		assertEquals(800, cursor.getLong(AndokuDatabase.IDX_GAME_TIMER));
+		assertEquals(created, cursor.getLong(AndokuDatabase.IDX_GAME_CREATED_DATE));
+		assertTrue(cursor.getLong(AndokuDatabase.IDX_GAME_MODIFIED_DATE) > created);
+		assertFalse(cursor.moveToNext());
+		cursor.close();
+
+		AndokuPuzzle puzzleLoad = MockPuzzleSource.createPuzzle(number);
+		assertTrue(db.loadGame(puzzleId, puzzleLoad, timer));
+		assertEquals(ValueSet.of(7), puzzleLoad.getValues(0, 1));
+	}
+
 	public void testDeleteGame() throws Exception {
 		int number = 0;
 		AndokuPuzzle puzzle = MockPuzzleSource.createPuzzle(number);
@@ -109,6 +147,45 @@ public class AndokuDatabaseSaveGameTest extends AndroidTestCase {
 		assertEquals(0, countGames(source2));
 	}
 
+	public void testFindEquivalentGame() throws Exception {
+		AndokuPuzzle puzzle = MockPuzzleSource.createPuzzle(1);
+		AndokuPuzzle samePuzzle = MockPuzzleSource.createSolvedPuzzle(1);
+		AndokuPuzzle otherPuzzle = MockPuzzleSource.createPuzzle(2);
+		TickTimer timer = new TickTimer(new MockTickListener());
+
+		PuzzleId puzzleId = new PuzzleId("mock:1", 1);
+		PuzzleId inProgressId = new PuzzleId("mock:2", 5);
+		PuzzleId solvedId = new PuzzleId("mock:3", 7);
+
+		db.saveGame(puzzleId, puzzle, timer);
+		db.saveGame(new PuzzleId("mock:1", 2), otherPuzzle, timer);
+		assertNull(findEquivalentGame(puzzleId, puzzle));
+
+		db.saveGame(inProgressId, puzzle, timer);
+		assertEquals(inProgressId, findEquivalentGame(puzzleId, puzzle));
+
+		// solved games take precedence, even over games that have been modified more recently
+		db.saveGame(solvedId, samePuzzle, timer);
+		db.saveGame(inProgressId, puzzle, timer);
+		assertEquals(solvedId, findEquivalentGame(puzzleId, puzzle));
+	}
+
+	private PuzzleId findEquivalentGame(PuzzleId puzzleId, AndokuPuzzle puzzle) {
+		Cursor cursor = db.findEquivalentGame(puzzleId, puzzle.getFingerprint());
+		try {
+			if (!cursor.moveToFirst())
+				return null;
+
+			assertEquals(puzzle.getPuzzleType().ordinal(), cursor
+					.getInt(AndokuDatabase.IDX_GAME_TYPE));
+			return new PuzzleId(cursor.getString(AndokuDatabase.IDX_GAME_SOURCE), cursor
+					.getInt(AndokuDatabase.IDX_GAME_NUMBER));
+		}
+		finally {
+			cursor.close();
+		}
+	}
+
 	private int countGames(String sourceId) {
 		Cursor cursor = db.findGamesBySource(sourceId);
 		try {
@@ -336,6 +413,46 @@ public class AndokuDatabaseSaveGameTest extends AndroidTestCase {
 		assertFalse(db.loadGame(new PuzzleId(sourceId2, 2), puzzle1, timer1));
 	}
 
+	public void testSaveAndLoadSolution() throws Exception {
+		Puzzle problem = PuzzleDecoder.decode(MockPuzzleSource.PUZZLES[3]);
+		long key = SolutionCache.getKey(problem);
+		assertFalse(db.hasSolution(key));
+		assertNull(db.loadSolution(key));
+
+		Solution solution = PuzzleDecoder.decodeValues(MockPuzzleSource.SOLUTIONS[3]);
+		db.saveSolution(key, solution);
+
+		assertTrue(db.hasSolution(key));
+		Solution loaded = db.loadSolution(key);
+		for (int row = 0; row < 9; row++)
+			for (int col = 0; col < 9; col++)
+				assertEquals(solution.getValue(row, col), loaded.getValue(row, col));
+
+		Puzzle other = PuzzleDecoder.decode(MockPuzzleSource.PUZZLES[4]);
+		assertFalse(db.hasSolution(SolutionCache.getKey(other)));
+	}
+
+	public void testSolutionCacheIgnoresSolutionThatDoesNotMatchClues() throws Exception {
+		Puzzle problem = PuzzleDecoder.decode(MockPuzzleSource.PUZZLES[3]);
+		Solution solution = PuzzleDecoder.decodeValues(MockPuzzleSource.SOLUTIONS[3]);
+		Solution wrong = PuzzleDecoder.decodeValues(MockPuzzleSource.SOLUTIONS[4]);
+
+		SolutionCache cache = new SolutionCache(db);
+		try {
+			// simulates a key collision with another puzzle
+			db.saveSolution(SolutionCache.getKey(problem), wrong);
+			assertNull(cache.get(problem));
+
+			cache.put(problem, solution);
+			Solution loaded = cache.get(problem);
+			assertNotNull(loaded);
+			assertEquals(solution.getValue(8, 8), loaded.getValue(8, 8));
+		}
+		finally {
+			cache.close();
+		}
+	}
+
 	private static final class MockTickListener implements TickListener {
 		public void onTick(long time) {
 		}
@@ -0,0 +1,131 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.db;
+
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.googlecode.andoku.TickListener;
+import com.googlecode.andoku.TickTimer;
+import com.googlecode.andoku.model.AndokuPuzzle;
+import com.googlecode.andoku.model.ValueSet;
+import com.googlecode.andoku.util.MockPuzzleSource;
+
+public class AutoSaveQueueTest extends AndroidTestCase {
+	private AndokuDatabase db;
+	private AutoSaveQueue queue;
+
+	@Override
+	protected void setUp() throws Exception {
+		db = new AndokuDatabase(getContext());
+		db.resetAll();
+
+		queue = new AutoSaveQueue(db, 60000);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		queue.close();
+		db.close();
+	}
+
+	public void testFlushWritesLatestSnapshot() throws Exception {
+		int number = 0;
+		AndokuPuzzle puzzle = MockPuzzleSource.createPuzzle(number);
+		TickTimer timer = new TickTimer(new MockTickListener());
+		PuzzleId puzzleId = new PuzzleId(MockPuzzleSource.SOURCE_ID, number);
+
+		timer.setTime(700);
+		queue.save(puzzleId, puzzle, timer);
+
+		puzzle.setValues(0, 1, ValueSet.of(7));
+		timer.setTime(800);
+		queue.save(puzzleId, puzzle, timer);
+
+		// snapshot has been taken; later changes must not leak into the saved game
+		puzzle.setValues(0, 2, ValueSet.of(3));
+
+		assertEquals(0, countGames());
+
+		queue.flush();
+
+		assertEquals(1, countGames());
+
+		AndokuPuzzle puzzleLoad = MockPuzzleSource.createPuzzle(number);
+		TickTimer timerLoad = new TickTimer(new MockTickListener());
+		assertTrue(db.loadGame(puzzleId, puzzleLoad, timerLoad));
+		assertEquals(ValueSet.of(7), puzzleLoad.getValues(0, 1));
+		assertEquals(new ValueSet(), puzzleLoad.getValues(0, 2));
+		assertEquals(800, timerLoad.getTime());
+	}
+
+	public void testDiscard() throws Exception {
+		AndokuPuzzle puzzle1 = MockPuzzleSource.createPuzzle(1);
+		AndokuPuzzle puzzle2 = MockPuzzleSource.createPuzzle(2);
+		TickTimer timer = new TickTimer(new MockTickListener());
+		PuzzleId puzzleId1 = new PuzzleId(MockPuzzleSource.SOURCE_ID, 1);
+		PuzzleId puzzleId2 = new PuzzleId(MockPuzzleSource.SOURCE_ID, 2);
+
+		queue.save(puzzleId1, puzzle1, timer);
+		queue.save(puzzleId2, puzzle2, timer);
+		queue.discard(puzzleId1);
+		queue.flush();
+
+		assertFalse(db.loadGame(puzzleId1, puzzle1, timer));
+		assertTrue(db.loadGame(puzzleId2, puzzle2, timer));
+	}
+
+	public void testCloseFlushesAndIgnoresLaterCalls() throws Exception {
+		AndokuPuzzle puzzle1 = MockPuzzleSource.createPuzzle(1);
+		AndokuPuzzle puzzle2 = MockPuzzleSource.createPuzzle(2);
+		TickTimer timer = new TickTimer(new MockTickListener());
+		PuzzleId puzzleId1 = new PuzzleId(MockPuzzleSource.SOURCE_ID, 1);
+		PuzzleId puzzleId2 = new PuzzleId(MockPuzzleSource.SOURCE_ID, 2);
+
+		queue.save(puzzleId1, puzzle1, timer);
+		queue.close();
+
+		assertEquals(1, countGames());
+
+		// must neither throw RejectedExecutionException nor write anything
+		queue.save(puzzleId2, puzzle2, timer);
+		queue.flush();
+		queue.close();
+
+		assertEquals(1, countGames());
+		assertFalse(db.loadGame(puzzleId2, puzzle2, timer));
+	}
+
+	private int countGames() {
+		Cursor cursor = db.findAllGames();
+		try {
+			return cursor.getCount();
+		}
+		finally {
+			cursor.close();
+		}
+	}
+
+	private static final class MockTickListener implements TickListener {
+		public void onTick(long time) {
+		}
+	}
+}
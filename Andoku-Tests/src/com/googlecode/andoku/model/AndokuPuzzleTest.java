@@ -20,6 +20,9 @@
 
 package com.googlecode.andoku.model;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+
 import junit.framework.TestCase;
 
 import com.googlecode.andoku.util.MockPuzzleSource;
@@ -74,4 +77,105 @@ public class AndokuPuzzleTest extends TestCase {
 		assertEquals(p1.getRegionErrors(), p2.getRegionErrors());
 		assertEquals(p1.getCellErrors(), p2.getCellErrors());
 	}
+
+	public void testRestoreVersion5Memento() throws Exception {
+		AndokuPuzzle p = MockPuzzleSource.createPuzzle(0);
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(baos);
+		out.writeShort(0xaa2b); // magic
+		out.writeShort(5); // version
+		out.writeChar(9);
+		for (int row = 0; row < 9; row++) {
+			for (int col = 0; col < 9; col++) {
+				if (row == 0 && col == 1)
+					out.writeChar(ValueSet.of(7).toInt());
+				else if (row == 0 && col == 4)
+					out.writeChar(ValueSet.of(3, 4).toInt());
+				else
+					out.writeChar(p.getValues(row, col).toInt());
+			}
+		}
+		out.writeChar(0); // region errors
+		out.writeChar(1); // cell errors
+		out.writeChar(0);
+		out.writeChar(4);
+		out.close();
+
+		assertTrue(p.restoreFromMemento(baos.toByteArray()));
+
+		assertEquals(ValueSet.of(7), p.getValues(0, 1));
+		assertEquals(ValueSet.of(3, 4), p.getValues(0, 4));
+		assertTrue(p.getRegionErrors().isEmpty());
+		assertEquals(1, p.getCellErrors().size());
+		assertTrue(p.getCellErrors().contains(new Position(0, 4)));
+	}
+
+	public void testMementoOnlyStoresFilledInCells() throws Exception {
+		AndokuPuzzle p1 = MockPuzzleSource.createPuzzle(0);
+		byte[] empty = p1.saveToMemento();
+
+		// magic, version, size, 81 bit cell bitmap, error counts
+		assertEquals(2 + 2 + 1 + 11 + 2, empty.length);
+
+		p1.setValues(0, 1, ValueSet.of(7));
+		p1.setValues(8, 7, ValueSet.of(0, 1, 2, 3, 4, 5, 6, 7, 8));
+		byte[] memento = p1.saveToMemento();
+		// two varints of two bytes each
+		assertEquals(empty.length + 2 + 2, memento.length);
+
+		AndokuPuzzle p2 = MockPuzzleSource.createPuzzle(0);
+		assertTrue(p2.restoreFromMemento(memento));
+		assertEquals(ValueSet.of(7), p2.getValues(0, 1));
+		assertEquals(ValueSet.of(0, 1, 2, 3, 4, 5, 6, 7, 8), p2.getValues(8, 7));
+		assertEquals(ValueSet.none(), p2.getValues(0, 2));
+		assertEquals(p1.getValues(0, 0), p2.getValues(0, 0));
+	}
+
+	public void testRestoreRejectsValueOutOfRange() throws Exception {
+		AndokuPuzzle p1 = MockPuzzleSource.createPuzzle(0);
+		p1.setValues(0, 1, ValueSet.of(7));
+		byte[] memento = p1.saveToMemento();
+
+		// magic, version, size and cell bitmap precede the varint 0x80 0x01 (value 7); turn it into
+		// 0x80 0x04, a value of 9 that does not exist in a 9x9 puzzle
+		final int offset = 2 + 2 + 1 + 11;
+		assertEquals((byte) 0x80, memento[offset]);
+		assertEquals(0x01, memento[offset + 1]);
+		memento[offset + 1] = 0x04;
+
+		AndokuPuzzle p2 = MockPuzzleSource.createPuzzle(0);
+		assertFalse(p2.restoreFromMemento(memento));
+		assertEquals(ValueSet.none(), p2.getValues(0, 1));
+	}
+
+	public void testConflictTracking() throws Exception {
+		AndokuPuzzle p = MockPuzzleSource.createSolvedPuzzle(0);
+
+		assertTrue(p.isSolved());
+		assertFalse(p.hasRegionConflicts());
+		assertEquals(0, p.getMissingValuesCount());
+
+		// correct values are 7 at 0x1 and 6 at 0x2; setting 0x1 to 6 creates a duplicate
+		p.setValues(0, 1, ValueSet.of(6));
+
+		assertFalse(p.isSolved());
+		assertTrue(p.hasRegionConflicts());
+		assertTrue(p.isInConflict(0, 1));
+		assertTrue(p.isInConflict(0, 2));
+		assertFalse(p.isInConflict(0, 4));
+		assertEquals(0, p.getMissingValuesCount());
+
+		p.setValues(0, 1, ValueSet.of(4, 6));
+
+		assertFalse(p.isSolved());
+		assertFalse(p.hasRegionConflicts());
+		assertFalse(p.isInConflict(0, 2));
+		assertEquals(1, p.getMissingValuesCount());
+
+		p.setValues(0, 1, ValueSet.of(7));
+
+		assertTrue(p.isSolved());
+		assertEquals(0, p.getMissingValuesCount());
+	}
 }
@@ -0,0 +1,139 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.model;
+
+import junit.framework.TestCase;
+
+import com.googlecode.andoku.transfer.PuzzleDecoder;
+import com.googlecode.andoku.util.MockPuzzleSource;
+
+public class PuzzleCanonicalizerTest extends TestCase {
+	private static final String STANDARD = MockPuzzleSource.PUZZLES[3];
+	private static final String SQUIGGLY = MockPuzzleSource.PUZZLES[0];
+	private static final String X = MockPuzzleSource.PUZZLES[6];
+
+	private final PuzzleCanonicalizer canonicalizer = new PuzzleCanonicalizer();
+
+	public void testRelabeledAndPermutedStandardPuzzleIsEquivalent() throws Exception {
+		// swap the first two bands, rows 6 and 8 and stacks 1 and 2, then transpose
+		int[] rows = { 3, 4, 5, 0, 1, 2, 8, 7, 6 };
+		int[] cols = { 0, 1, 2, 6, 7, 8, 3, 4, 5 };
+		String clues = relabel(transpose(permute(STANDARD, rows, cols)));
+
+		assertFalse(STANDARD.equals(clues));
+		assertEquals(fingerprint(STANDARD), fingerprint(clues));
+		assertEquals(canonicalClues(STANDARD), canonicalClues(clues));
+	}
+
+	public void testRotatedSquigglyPuzzleIsEquivalent() throws Exception {
+		String[] parts = SQUIGGLY.split("\\|");
+		String rotated = rotate(relabel(parts[0])) + "|" + rotate(parts[1]) + "|" + parts[2];
+
+		assertEquals(fingerprint(SQUIGGLY), fingerprint(rotated));
+	}
+
+	public void testRotatedCluesWithOriginalAreasAreNotEquivalent() throws Exception {
+		String[] parts = SQUIGGLY.split("\\|");
+		String rotated = rotate(parts[0]) + "|" + parts[1] + "|" + parts[2];
+
+		assertFalse(fingerprint(SQUIGGLY) == fingerprint(rotated));
+	}
+
+	public void testXPuzzleOnlyAllowsTransformationsThatPreserveDiagonals() throws Exception {
+		String clues = X.substring(0, 81);
+
+		assertEquals(fingerprint(X), fingerprint(rotate(relabel(clues)) + "||X"));
+
+		// swapping two rows moves cells off the diagonals
+		int[] rows = { 1, 0, 2, 3, 4, 5, 6, 7, 8 };
+		int[] cols = { 0, 1, 2, 3, 4, 5, 6, 7, 8 };
+		assertFalse(fingerprint(X) == fingerprint(permute(clues, rows, cols) + "||X"));
+	}
+
+	public void testGeometryIsPartOfFingerprint() throws Exception {
+		assertFalse(fingerprint(STANDARD) == fingerprint(STANDARD + "||X"));
+		assertFalse(fingerprint(STANDARD + "||H") == fingerprint(STANDARD + "||C"));
+	}
+
+	public void testIsEquivalent() throws Exception {
+		String[] parts = SQUIGGLY.split("\\|");
+		String rotated = rotate(relabel(parts[0])) + "|" + rotate(parts[1]) + "|" + parts[2];
+		String rotatedClues = rotate(parts[0]) + "|" + parts[1] + "|" + parts[2];
+
+		assertTrue(canonicalizer.isEquivalent(PuzzleDecoder.decode(SQUIGGLY), PuzzleDecoder
+				.decode(rotated)));
+		assertFalse(canonicalizer.isEquivalent(PuzzleDecoder.decode(SQUIGGLY), PuzzleDecoder
+				.decode(rotatedClues)));
+		assertFalse(canonicalizer.isEquivalent(PuzzleDecoder.decode(STANDARD), PuzzleDecoder
+				.decode(STANDARD + "||X")));
+	}
+
+	public void testDifferentPuzzlesHaveDifferentFingerprints() throws Exception {
+		String[] puzzles = MockPuzzleSource.PUZZLES;
+		for (int i = 0; i < puzzles.length; i++) {
+			for (int j = i + 1; j < puzzles.length; j++) {
+				assertFalse(fingerprint(puzzles[i]) == fingerprint(puzzles[j]));
+			}
+		}
+	}
+
+	private long fingerprint(String puzzle) {
+		return canonicalizer.getFingerprint(PuzzleDecoder.decode(puzzle));
+	}
+
+	private String canonicalClues(String puzzle) {
+		return canonicalizer.getCanonicalClues(PuzzleDecoder.decode(puzzle));
+	}
+
+	private static String permute(String clues, int[] rows, int[] cols) {
+		StringBuilder sb = new StringBuilder();
+		for (int row = 0; row < 9; row++)
+			for (int col = 0; col < 9; col++)
+				sb.append(clues.charAt(rows[row] * 9 + cols[col]));
+		return sb.toString();
+	}
+
+	private static String transpose(String clues) {
+		StringBuilder sb = new StringBuilder();
+		for (int row = 0; row < 9; row++)
+			for (int col = 0; col < 9; col++)
+				sb.append(clues.charAt(col * 9 + row));
+		return sb.toString();
+	}
+
+	private static String rotate(String clues) {
+		StringBuilder sb = new StringBuilder();
+		for (int row = 0; row < 9; row++)
+			for (int col = 0; col < 9; col++)
+				sb.append(clues.charAt((8 - col) * 9 + row));
+		return sb.toString();
+	}
+
+	// maps digit d to 10 - d
+	private static String relabel(String clues) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < clues.length(); i++) {
+			char c = clues.charAt(i);
+			sb.append(c >= '1' && c <= '9' ? (char) ('9' - c + '1') : c);
+		}
+		return sb.toString();
+	}
+}
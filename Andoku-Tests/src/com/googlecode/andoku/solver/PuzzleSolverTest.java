@@ -0,0 +1,156 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.solver;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import com.googlecode.andoku.model.Puzzle;
+import com.googlecode.andoku.transfer.PuzzleDecoder;
+import com.googlecode.andoku.util.MockPuzzleSource;
+
+public class PuzzleSolverTest extends TestCase {
+	public void testBitboardSolverFindsUniqueSolutions() throws Exception {
+		for (int i = 0; i < MockPuzzleSource.PUZZLES.length; i++) {
+			Puzzle puzzle = PuzzleDecoder.decode(MockPuzzleSource.PUZZLES[i]);
+
+			UniqueSolutionReporter reporter = new UniqueSolutionReporter();
+			new BitboardPuzzleSolver().solve(puzzle, reporter);
+
+			assertTrue(reporter.hasUniqueSolution());
+			assertEquals(MockPuzzleSource.SOLUTIONS[i], toValues(reporter.getSolution()));
+		}
+	}
+
+	public void testBitboardSolverAgreesWithDlxAndBruteForce() throws Exception {
+		Random random = new Random(0);
+
+		for (String puzzleStr : MockPuzzleSource.PUZZLES) {
+			Puzzle puzzle = removeClues(PuzzleDecoder.decode(puzzleStr), 4, random);
+
+			long bitboard = countSolutions(new BitboardPuzzleSolver(), puzzle);
+			long dlx = countSolutions(new DlxPuzzleSolver(), puzzle);
+			long brute = countSolutions(new BrutePuzzleSolver(), puzzle);
+
+			assertEquals(dlx, bitboard);
+			assertEquals(brute, bitboard);
+		}
+	}
+
+	public void testDlxSolverCanBeTimeSliced() throws Exception {
+		Random random = new Random(1);
+
+		for (String puzzleStr : MockPuzzleSource.PUZZLES) {
+			Puzzle puzzle = removeClues(PuzzleDecoder.decode(puzzleStr), 6, random);
+
+			SolutionCounterReporter reporter = new SolutionCounterReporter();
+			DlxPuzzleSolver solver = new DlxPuzzleSolver();
+			solver.start(puzzle, reporter);
+
+			int slices = 1;
+			while (!solver.resume(5)) {
+				assertTrue(solver.isPaused());
+				slices++;
+			}
+
+			assertFalse(solver.isPaused());
+			assertTrue(slices > 1);
+			assertEquals(countSolutions(new DlxPuzzleSolver(), puzzle), reporter.getCounter());
+		}
+	}
+
+	public void testDlxSolverUndoesPlacementsWhenGivingUp() throws Exception {
+		Puzzle puzzle = removeClues(PuzzleDecoder.decode(MockPuzzleSource.PUZZLES[0]), 8,
+				new Random(2));
+		final String clues = puzzle.toString();
+
+		DlxPuzzleSolver unlimited = new DlxPuzzleSolver();
+		SolutionCounterReporter counter = new SolutionCounterReporter();
+		unlimited.solve(puzzle, counter);
+
+		assertFalse(unlimited.isLimitReached());
+		assertTrue(counter.getCounter() > 1);
+
+		final Puzzle[] reported = new Puzzle[1];
+		PuzzleReporter reporter = new PuzzleReporter() {
+			public boolean report(Puzzle solution) {
+				reported[0] = solution;
+				return true;
+			}
+		};
+
+		DlxPuzzleSolver limited = new DlxPuzzleSolver(null, unlimited.getNumberOfUpdates() / 2);
+		limited.solve(puzzle, reporter);
+
+		assertTrue(limited.isLimitReached());
+		assertNotNull(reported[0]);
+		assertEquals(clues, reported[0].toString());
+	}
+
+	public void testParallelCounterAgreesWithDlx() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			ParallelSolutionCounter counter = new ParallelSolutionCounter(executor);
+			Random random = new Random(3);
+
+			for (String puzzleStr : MockPuzzleSource.PUZZLES) {
+				Puzzle unique = PuzzleDecoder.decode(puzzleStr);
+				assertEquals(1, countSolutions(new DlxPuzzleSolver(), unique));
+				assertEquals(1, counter.countSolutions(unique, 0));
+
+				Puzzle ambiguous = removeClues(PuzzleDecoder.decode(puzzleStr), 6, random);
+				long expected = countSolutions(new DlxPuzzleSolver(), ambiguous);
+				assertTrue(expected > 1);
+				assertEquals(expected, counter.countSolutions(ambiguous, 0));
+				assertEquals(1, counter.countSolutions(ambiguous, 1));
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private long countSolutions(PuzzleSolver solver, Puzzle puzzle) {
+		SolutionCounterReporter reporter = new SolutionCounterReporter();
+		solver.solve(puzzle, reporter);
+		return reporter.getCounter();
+	}
+
+	private Puzzle removeClues(Puzzle puzzle, int count, Random random) {
+		final int size = puzzle.getSize();
+		while (count > 0) {
+			int row = random.nextInt(size);
+			int col = random.nextInt(size);
+			if (puzzle.getValue(row, col) != Puzzle.UNDEFINED) {
+				puzzle.clear(row, col);
+				count--;
+			}
+		}
+		return puzzle;
+	}
+
+	private String toValues(Puzzle solution) {
+		return solution.toString().replace(" ", "");
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.transfer;
+
+import junit.framework.TestCase;
+
+import com.googlecode.andoku.model.Puzzle;
+import com.googlecode.andoku.util.MockPuzzleSource;
+
+public class PuzzleDecoderTest extends TestCase {
+	private static final String STANDARD_1 = MockPuzzleSource.PUZZLES[3];
+	private static final String STANDARD_2 = MockPuzzleSource.PUZZLES[4];
+	private static final String SQUIGGLY = MockPuzzleSource.PUZZLES[0];
+	private static final String X = MockPuzzleSource.PUZZLES[6];
+
+	public void testStandardPuzzlesShareGeometry() throws Exception {
+		Puzzle p1 = PuzzleDecoder.decode(STANDARD_1);
+		Puzzle p2 = PuzzleDecoder.decode(STANDARD_2);
+
+		assertSame(p1.getGeometry(), p2.getGeometry());
+		assertEquals(STANDARD_1, clues(p1));
+		assertEquals(STANDARD_2, clues(p2));
+	}
+
+	public void testSquigglyPuzzlesWithSameAreasShareGeometry() throws Exception {
+		Puzzle p1 = PuzzleDecoder.decode(SQUIGGLY);
+		Puzzle p2 = PuzzleDecoder.decode(SQUIGGLY);
+
+		assertSame(p1.getGeometry(), p2.getGeometry());
+		assertNotSame(p1, p2);
+	}
+
+	public void testDifferentExtraRegionsDoNotShareGeometry() throws Exception {
+		Puzzle standard = PuzzleDecoder.decode(STANDARD_1);
+		Puzzle x = PuzzleDecoder.decode(X);
+
+		assertNotSame(standard.getGeometry(), x.getGeometry());
+		assertEquals(2, x.getExtraRegions().length);
+	}
+
+	public void testValuesOfPuzzlesWithSameGeometryAreIndependent() throws Exception {
+		Puzzle p1 = PuzzleDecoder.decode(SQUIGGLY);
+		Puzzle p2 = PuzzleDecoder.decode(SQUIGGLY);
+
+		assertEquals(Puzzle.UNDEFINED, p1.getValue(0, 1));
+		int possible = p2.getPossibleValuesMask(0, 1);
+		int value = Integer.numberOfTrailingZeros(possible);
+
+		p1.set(0, 1, value);
+
+		assertEquals(value, p1.getValue(0, 1));
+		assertEquals(Puzzle.UNDEFINED, p2.getValue(0, 1));
+		assertEquals(p1.getValuesCount() - 1, p2.getValuesCount());
+		assertEquals(possible, p2.getPossibleValuesMask(0, 1));
+		assertEquals(0, p1.getPossibleValuesMask(0, 2) & (1 << value));
+	}
+
+	private static String clues(Puzzle puzzle) {
+		StringBuilder sb = new StringBuilder();
+		for (int row = 0; row < puzzle.getSize(); row++)
+			for (int col = 0; col < puzzle.getSize(); col++) {
+				int value = puzzle.getValue(row, col);
+				sb.append(value == Puzzle.UNDEFINED ? '.' : (char) ('1' + value));
+			}
+		return sb.toString();
+	}
+}
@@ -26,14 +26,11 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.List;
 
 import android.app.Activity;
 import android.content.ContentValues;
 import android.content.Intent;
 import android.content.res.Resources;
-import android.database.ContentObserver;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
@@ -42,6 +39,7 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import com.googlecode.andoku.client.AndokuClient;
+import com.googlecode.andoku.client.PuzzleInserter;
 import com.googlecode.andoku.client.UriAndPath;
 
 /**
@@ -81,19 +79,11 @@ public class WebImportActivity extends Activity {
 
 				Intent intent = params[0];
 				Uri uri = intent.getData();
-				String folderName = getFolderName(uri);
 
 				publishProgress(new SetTitleAction(resources.getString(
 						R.string.message_downloading_puzzles, uri)));
 
-				ArrayList<String> puzzles = loadPuzzles(uri);
-
-				UriAndPath uriAndPath = createFolder(folderName);
-
-				publishProgress(new SetTitleAction(resources.getString(
-						R.string.message_importing_puzzles, uriAndPath.getPath())));
-
-				return importPuzzles(uriAndPath.getUri(), puzzles);
+				return importPuzzles(uri, getFolderName(uri));
 			}
 			catch (IOException e) {
 				e.printStackTrace(); // TODO: better error handling
@@ -121,22 +111,26 @@ public class WebImportActivity extends Activity {
 			return folderName;
 		}
 
-		private ArrayList<String> loadPuzzles(Uri uri) throws IOException {
+		private Uri importPuzzles(Uri uri, String folderName) throws IOException {
 			URL url = new URL(uri.toString());
 			InputStream in = url.openStream();
 			try {
-				return loadPuzzles(in);
+				return importPuzzles(in, folderName);
 			}
 			finally {
 				in.close();
 			}
 		}
 
-		private ArrayList<String> loadPuzzles(InputStream in) throws IOException {
+		// Puzzles are inserted batch by batch while the download is still in progress so that
+		// memory usage does not depend on the size of the collection.
+		private Uri importPuzzles(InputStream in, String folderName) throws IOException {
 			long lastUpdate = System.currentTimeMillis();
 			publishProgress(new IndeterminateProgressAction(0));
 
-			ArrayList<String> result = new ArrayList<String>();
+			AndokuClient client = new AndokuClient(WebImportActivity.this);
+			Uri folderUri = null;
+			PuzzleInserter inserter = null;
 
 			Reader reader = new InputStreamReader(in, "us-ascii");
 			BufferedReader br = new BufferedReader(reader);
@@ -150,18 +144,37 @@ public class WebImportActivity extends Activity {
 				if (!looksSane(line))
 					continue;
 
-				result.add(line);
+				if (inserter == null) {
+					// create the folder once the first valid puzzle shows up
+					folderUri = createFolder(client, folderName);
+					inserter = createPuzzleInserter(client, folderUri);
+				}
+
+				ContentValues values = new ContentValues();
+				values.put(AndokuClient.KEY_CLUES, line);
+				inserter.add(values);
 
 				long now = System.currentTimeMillis();
 				if (now - lastUpdate > PROGRESS_UPDATE_INTERVAL_MS) {
-					publishProgress(new IndeterminateProgressAction(result.size()));
+					publishProgress(new IndeterminateProgressAction(inserter.getCount()));
 					lastUpdate = now;
 				}
 			}
 
-			publishProgress(new IndeterminateProgressAction(result.size()));
+			if (inserter == null)
+				return null;
+
+			inserter.flush();
 
-			return result;
+			publishProgress(new IndeterminateProgressAction(inserter.getCount()));
+
+			if (inserter.getCount() == 0) {
+				// every puzzle was a duplicate; do not leave an empty folder behind
+				client.deleteFolderIfEmpty(folderUri);
+				return null;
+			}
+
+			return inserter.getFirstPuzzleUri();
 		}
 
 		private boolean looksSane(String line) {
@@ -179,52 +192,22 @@ public class WebImportActivity extends Activity {
 			return true;
 		}
 
-		private UriAndPath createFolder(String folderName) {
-			AndokuClient client = new AndokuClient(WebImportActivity.this);
-			return client.createUniqueFolder(folderName);
-		}
-
-		private Uri importPuzzles(Uri folderUri, ArrayList<String> puzzles) {
-			List<ContentValues> valuesArray = toContentValues(puzzles);
-
-			final int total = valuesArray.size();
-			publishProgress(new DeterminateProgressAction(0, total));
-
-			ContentObserver observer = new ContentObserver(null) {
-				private long lastUpdate = System.currentTimeMillis();
-				private int counter = 0;
+		private Uri createFolder(AndokuClient client, String folderName) {
+			UriAndPath uriAndPath = client.createUniqueFolder(folderName);
 
-				@Override
-				public void onChange(boolean selfChange) {
-					counter++;
+			publishProgress(new SetTitleAction(getResources().getString(
+					R.string.message_importing_puzzles, uriAndPath.getPath())));
 
-					long now = System.currentTimeMillis();
-					if (now - lastUpdate > PROGRESS_UPDATE_INTERVAL_MS) {
-						publishProgress(new DeterminateProgressAction(counter, total));
-						lastUpdate = now;
-					}
-				}
-			};
-
-			AndokuClient client = new AndokuClient(WebImportActivity.this);
-			final Uri uri = client.insertPuzzles(folderUri, valuesArray, observer);
-
-			publishProgress(new DeterminateProgressAction(total, total));
-
-			return uri;
+			return uriAndPath.getUri();
 		}
 
-		private List<ContentValues> toContentValues(ArrayList<String> puzzles) {
-			List<ContentValues> values = new ArrayList<ContentValues>(puzzles.size());
+		private PuzzleInserter createPuzzleInserter(AndokuClient client, Uri folderUri) {
+			// importing the same collection twice should not create duplicate puzzles
+			Uri skipDuplicatesUri = AndokuClient.withDuplicatesMode(folderUri,
+					AndokuClient.DUPLICATES_SKIP);
 
-			for (String clues : puzzles) {
-				ContentValues contentValues = new ContentValues();
-				contentValues.put(AndokuClient.KEY_CLUES, clues);
-
-				values.add(contentValues);
-			}
-
-			return values;
+			return client.createPuzzleInserter(skipDuplicatesUri,
+					AndokuClient.PUZZLES_PER_BULK_INSERT);
 		}
 	}
 
@@ -258,22 +241,4 @@ public class WebImportActivity extends Activity {
 			progressText.setText(String.valueOf(value));
 		}
 	}
-
-	private final class DeterminateProgressAction extends Action {
-		private final int value;
-		private final int total;
-
-		public DeterminateProgressAction(int value, int total) {
-			this.value = value;
-			this.total = total;
-		}
-
-		@Override
-		protected void run() {
-			progressBar.setIndeterminate(false);
-			progressBar.setProgress(value);
-			progressBar.setMax(total);
-			progressText.setText(value + "/" + total);
-		}
-	}
 }
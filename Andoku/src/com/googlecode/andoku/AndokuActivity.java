@@ -29,6 +29,7 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
+import android.database.Cursor;
 import android.graphics.PointF;
 import android.os.AsyncTask;
 import android.os.Bundle;
@@ -59,8 +60,10 @@ import com.googlecode.andoku.commands.AndokuContext;
 import com.googlecode.andoku.commands.EliminateValuesCommand;
 import com.googlecode.andoku.commands.SetValuesCommand;
 import com.googlecode.andoku.db.AndokuDatabase;
+import com.googlecode.andoku.db.AutoSaveQueue;
 import com.googlecode.andoku.db.GameStatistics;
 import com.googlecode.andoku.db.PuzzleId;
+import com.googlecode.andoku.db.SolutionCache;
 import com.googlecode.andoku.history.Command;
 import com.googlecode.andoku.history.History;
 import com.googlecode.andoku.im.InputMethod;
@@ -68,7 +71,9 @@ import com.googlecode.andoku.im.InputMethodTarget;
 import com.googlecode.andoku.model.AndokuPuzzle;
 import com.googlecode.andoku.model.Difficulty;
 import com.googlecode.andoku.model.Position;
+import com.googlecode.andoku.model.Puzzle;
 import com.googlecode.andoku.model.PuzzleType;
+import com.googlecode.andoku.model.Solution;
 import com.googlecode.andoku.model.ValueSet;
 import com.googlecode.andoku.source.PuzzleHolder;
 import com.googlecode.andoku.source.PuzzleSource;
@@ -89,6 +94,9 @@ public class AndokuActivity extends Activity
 	private static final int MENU_RESET_PUZZLE = Menu.FIRST + 3;
 	private static final int MENU_RESET_ALL_PUZZLES = Menu.FIRST + 4;
 	private static final int MENU_SETTINGS = Menu.FIRST + 5;
+	private static final int MENU_RENDER_METRICS = Menu.FIRST + 6;
+
+	private static final int RENDER_METRICS_WINDOW = 300;
 
 	private static final String APP_STATE_PUZZLE_SOURCE_ID = "puzzleSourceId";
 	private static final String APP_STATE_PUZZLE_NUMBER = "puzzleNumber";
@@ -98,6 +106,11 @@ public class AndokuActivity extends Activity
 
 	private static final int REQUEST_CODE_SETTINGS = 0;
 
+	private static final long AUTO_SAVE_DELAY = 1000;
+
+	// number of puzzles, starting with the current one, to compute solutions for in advance
+	private static final int PRECOMPUTED_SOLUTIONS = 4;
+
 	private static final int GAME_STATE_NEW_ACTIVITY_STARTED = 0;
 	private static final int GAME_STATE_ACTIVITY_STATE_RESTORED = 1;
 	private static final int GAME_STATE_READY = 2;
@@ -107,12 +120,15 @@ public class AndokuActivity extends Activity
 	private int gameState;
 
 	private AndokuDatabase db;
+	private AutoSaveQueue saveQueue;
+	private SolutionCache solutionCache;
 
 	private Vibrator vibrator;
 
 	private PuzzleSource source;
 	private int puzzleNumber;
 	private AndokuPuzzle puzzle;
+	private Puzzle problem;
 	private TickTimer timer = new TickTimer(this);
 
 	private History<AndokuContext> history = new History<AndokuContext>(new AndokuContext() {
@@ -123,6 +139,10 @@ public class AndokuActivity extends Activity
 		public AndokuPuzzle getPuzzle() {
 			return puzzle;
 		}
+
+		public void onValuesChanged(int row, int col) {
+			andokuView.addDirtyCell(row, col);
+		}
 	});
 
 	private ViewGroup background;
@@ -201,6 +221,8 @@ public class AndokuActivity extends Activity
 		adView.setVisibility(View.VISIBLE);
 
 		db = new AndokuDatabase(this);
+		saveQueue = new AutoSaveQueue(db, AUTO_SAVE_DELAY);
+		solutionCache = new SolutionCache(db);
 
 		vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
 
@@ -212,6 +234,8 @@ public class AndokuActivity extends Activity
 
 		andokuView = (AndokuPuzzleView) findViewById(R.id.viewPuzzle);
 		andokuView.setOnKeyListener(this);
+		if (Constants.RENDER_METRICS)
+			andokuView.setRenderMetrics(new RenderMetrics(RENDER_METRICS_WINDOW));
 
 		timerView = (TextView) findViewById(R.id.labelTimer);
 
@@ -373,6 +397,8 @@ public class AndokuActivity extends Activity
 			autoSavePuzzle();
 		}
 
+		saveQueue.flush();
+
 		setKeepScreenOn(false);
 	}
 
@@ -397,10 +423,22 @@ public class AndokuActivity extends Activity
 
 		super.onDestroy();
 
+		if (Constants.RENDER_METRICS)
+			andokuView.setRenderMetrics(null);
+
+		// stop precomputing solutions before closing the source and the database
+		if (solutionCache != null) {
+			solutionCache.close();
+		}
+
 		if (source != null) {
 			source.close();
 		}
 
+		if (saveQueue != null) {
+			saveQueue.close();
+		}
+
 		if (db != null) {
 			db.close();
 		}
@@ -453,6 +491,8 @@ public class AndokuActivity extends Activity
 				.setIcon(android.R.drawable.ic_menu_delete);
 		menu.add(Menu.NONE, MENU_SETTINGS, Menu.NONE, R.string.menu_settings).setIcon(
 				android.R.drawable.ic_menu_preferences);
+		if (Constants.RENDER_METRICS)
+			menu.add(Menu.NONE, MENU_RENDER_METRICS, Menu.NONE, "Render metrics");
 		return super.onCreateOptionsMenu(menu);
 	}
 
@@ -501,6 +541,9 @@ public class AndokuActivity extends Activity
 			case MENU_SETTINGS:
 				onSettings();
 				return true;
+			case MENU_RENDER_METRICS:
+				onRenderMetrics();
+				return true;
 			default:
 				return super.onOptionsItemSelected(item);
 		}
@@ -571,9 +614,12 @@ public class AndokuActivity extends Activity
 
 		updateKeypadHighlighing();
 
-		andokuView.invalidate();
+		andokuView.invalidateDirtyCells();
 
 		inputMethod.onValuesChanged();
+
+		if (gameState == GAME_STATE_PLAYING)
+			autoSavePuzzle();
 	}
 
 	public boolean onKey(View view, int keyCode, KeyEvent event) {
@@ -780,6 +826,7 @@ public class AndokuActivity extends Activity
 		if (Constants.LOG_V)
 			Log.v(TAG, "deleting all puzzles for " + sourceId);
 
+		saveQueue.flush();
 		db.deleteAll(sourceId);
 
 		gotoPuzzle(0);
@@ -789,6 +836,15 @@ public class AndokuActivity extends Activity
 		execute(new EliminateValuesCommand());
 	}
 
+	private void onRenderMetrics() {
+		RenderMetrics metrics = andokuView.getRenderMetrics();
+		String report = metrics.report();
+		Log.i(TAG, "Render metrics:\n" + report);
+		showInfo(report);
+
+		metrics.reset();
+	}
+
 	void onSettings() {
 		Intent intent = new Intent(this, SettingsActivity.class);
 		startActivityForResult(intent, REQUEST_CODE_SETTINGS);
@@ -855,7 +911,14 @@ public class AndokuActivity extends Activity
 	private void setPuzzle(int number) {
 		puzzleNumber = number;
 
-		puzzle = createAndokuPuzzle(number);
+		PuzzleHolder holder = source.load(number);
+		puzzle = new AndokuPuzzle(holder.getName(), holder.getPuzzle(), holder.getDifficulty());
+		problem = holder.getPuzzle();
+		Solution solution = solutionCache.get(problem);
+		if (solution != null)
+			puzzle.setSolution(solution);
+		solutionCache.precompute(source, number, PRECOMPUTED_SOLUTIONS);
+
 		history.clear();
 		undoButton.setEnabled(false);
 		redoButton.setEnabled(false);
@@ -869,12 +932,9 @@ public class AndokuActivity extends Activity
 		if (!restoreAutoSavedPuzzle()) {
 			Log.w(TAG, "unable to restore auto-saved puzzle");
 			timer.reset();
-		}
-	}
 
-	private AndokuPuzzle createAndokuPuzzle(int number) {
-		PuzzleHolder holder = source.load(number);
-		return new AndokuPuzzle(holder.getName(), holder.getPuzzle(), holder.getDifficulty());
+			new FindEquivalentGameTask().execute();
+		}
 	}
 
 	private String getPuzzleName() {
@@ -896,6 +956,21 @@ public class AndokuActivity extends Activity
 		return difficulties[difficulty.ordinal()];
 	}
 
+	private String getPuzzleSource(String sourceId, int number, PuzzleType puzzleType) {
+		final String suffix = "#" + (number + 1);
+
+		if (PuzzleSourceIds.isDbSource(sourceId)) {
+			return Util.getFolderName(db, sourceId) + " " + suffix;
+		}
+		else {
+			final Resources resources = getResources();
+			String name = Util.getPuzzleName(resources, puzzleType);
+			String[] difficulties = resources.getStringArray(R.array.difficulties);
+			int difficulty = sourceId.charAt(sourceId.length() - 1) - '0' - 1;
+			return name + " " + difficulties[difficulty] + " " + suffix;
+		}
+	}
+
 	private String getPuzzleSource() {
 		final String suffix = "#" + (puzzleNumber + 1) + "/" + source.numberOfPuzzles();
 
@@ -1034,6 +1109,7 @@ public class AndokuActivity extends Activity
 	}
 
 	private String getStatisticsDetails() {
+		saveQueue.flush();
 		GameStatistics stats = db.getStatistics(source.getSourceId());
 		return getResources().getString(R.string.message_statistics_details, stats.numGamesSolved,
 				DateUtil.formatTime(stats.getAverageTime()), DateUtil.formatTime(stats.minTime));
@@ -1065,7 +1141,7 @@ public class AndokuActivity extends Activity
 		if (Constants.LOG_V)
 			Log.v(TAG, "auto-saving puzzle " + puzzleId);
 
-		db.saveGame(puzzleId, puzzle, timer);
+		saveQueue.save(puzzleId, puzzle, timer);
 	}
 
 	private void deleteAutoSavedPuzzle() {
@@ -1074,6 +1150,8 @@ public class AndokuActivity extends Activity
 		if (Constants.LOG_V)
 			Log.v(TAG, "deleting auto-save game " + puzzleId);
 
+		saveQueue.discard(puzzleId);
+		saveQueue.flush();
 		db.delete(puzzleId);
 	}
 
@@ -1083,6 +1161,7 @@ public class AndokuActivity extends Activity
 		if (Constants.LOG_V)
 			Log.v(TAG, "restoring auto-save game " + puzzleId);
 
+		saveQueue.flush();
 		return db.loadGame(puzzleId, puzzle, timer);
 	}
 
@@ -1183,7 +1262,18 @@ public class AndokuActivity extends Activity
 
 		@Override
 		protected Boolean doInBackground(Void... params) {
-			return puzzle.computeSolution();
+			// the background worker may have finished in the meantime
+			Solution solution = solutionCache.get(problem);
+			if (solution != null) {
+				puzzle.setSolution(solution);
+				return true;
+			}
+
+			if (!puzzle.computeSolution())
+				return false;
+
+			solutionCache.put(problem, puzzle.getSolution());
+			return true;
 		}
 
 		@Override
@@ -1199,4 +1289,43 @@ public class AndokuActivity extends Activity
 				showWarning(R.string.warn_invalid_puzzle);
 		}
 	}
+
+	// tells the player if the same puzzle, possibly relabeled or mirrored, has been played in
+	// another folder or game variation
+	private final class FindEquivalentGameTask extends AsyncTask<Void, Void, String> {
+		private final PuzzleId puzzleId = getCurrentPuzzleId();
+		private final AndokuPuzzle gamePuzzle = puzzle;
+
+		@Override
+		protected String doInBackground(Void... params) {
+			try {
+				Cursor cursor = db.findEquivalentGame(puzzleId, gamePuzzle.getFingerprint());
+				try {
+					if (!cursor.moveToFirst())
+						return null;
+
+					String sourceId = cursor.getString(AndokuDatabase.IDX_GAME_SOURCE);
+					int number = cursor.getInt(AndokuDatabase.IDX_GAME_NUMBER);
+					PuzzleType puzzleType = PuzzleType.forOrdinal(cursor
+							.getInt(AndokuDatabase.IDX_GAME_TYPE));
+					return getPuzzleSource(sourceId, number, puzzleType);
+				}
+				finally {
+					cursor.close();
+				}
+			}
+			catch (IllegalStateException e) {
+				// the database has been closed because the activity is finishing
+				return null;
+			}
+		}
+
+		@Override
+		protected void onPostExecute(String where) {
+			if (where == null || isFinishing() || puzzle != gamePuzzle)
+				return;
+
+			showInfo(getResources().getString(R.string.info_equivalent_game, where));
+		}
+	}
 }
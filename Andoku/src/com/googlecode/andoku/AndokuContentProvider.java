@@ -55,6 +55,17 @@ public class AndokuContentProvider extends ContentProvider {
 	public static final String KEY_AREAS = "areas";
 	public static final String KEY_EXTRA_REGIONS = "extraRegions";
 
+	// query parameter of a puzzles URI that controls how duplicate puzzles are handled
+	public static final String PARAM_DUPLICATES = "duplicates";
+	// insert duplicates like any other puzzle (default)
+	public static final String DUPLICATES_ALLOW = "allow";
+	// do not insert duplicates; insert() returns the URI of the existing puzzle with PARAM_SKIPPED
+	public static final String DUPLICATES_SKIP = "skip";
+	// reject duplicates with an InvalidParameterException
+	public static final String DUPLICATES_REPORT = "report";
+	// query parameter that marks the URI returned for a skipped duplicate
+	public static final String PARAM_SKIPPED = "skipped";
+
 	private static final int CODE_FOLDERS = 1;
 	private static final int CODE_FOLDERS_ID = 2;
 	private static final int CODE_PUZZLES = 3;
@@ -155,7 +166,17 @@ public class AndokuContentProvider extends ContentProvider {
 
 	@Override
 	public int delete(Uri uri, String selection, String[] selectionArgs) {
-		throw new UnsupportedOperationException();
+		if (Constants.LOG_V)
+			Log.v(TAG, "delete(" + uri + ", " + selection + ", " + Arrays.toString(selectionArgs)
+					+ ")");
+
+		int match = MATCHER.match(uri);
+		switch (match) {
+			case CODE_FOLDERS_ID:
+				return deleteFolderIfEmpty(uri);
+			default:
+				throw new UnsupportedOperationException();
+		}
 	}
 
 	@Override
@@ -165,11 +186,11 @@ public class AndokuContentProvider extends ContentProvider {
 
 		db.beginTransaction();
 		try {
-			bulkInsert0(uri, valuesArray);
+			int inserted = bulkInsert0(uri, valuesArray);
 
 			db.setTransactionSuccessful();
 
-			return valuesArray.length;
+			return inserted;
 		}
 		finally {
 			db.endTransaction();
@@ -206,15 +227,29 @@ public class AndokuContentProvider extends ContentProvider {
 		return db.query(qb, projection, selection, selectionArgs, orderBy);
 	}
 
-	private void bulkInsert0(Uri uri, ContentValues[] valuesArray) {
+	// only empty folders may be deleted so that clients cannot remove puzzles or saved games
+	private int deleteFolderIfEmpty(Uri uri) {
+		long folderId = ContentUris.parseId(uri);
+
+		Long parentId = db.getParentFolderId(folderId);
+		if (parentId == null || !db.isEmpty(folderId))
+			return 0;
+
+		db.deleteFolder(folderId);
+
+		getContext().getContentResolver().notifyChange(
+				ContentUris.withAppendedId(CONTENT_URI, parentId), null);
+		return 1;
+	}
+
+	private int bulkInsert0(Uri uri, ContentValues[] valuesArray) {
 		int match = MATCHER.match(uri);
 		switch (match) {
 			case CODE_FOLDERS:
 				bulkInsertFolder(uri, valuesArray);
-				break;
+				return valuesArray.length;
 			case CODE_PUZZLES:
-				bulkInsertPuzzle(uri, valuesArray);
-				break;
+				return bulkInsertPuzzle(uri, valuesArray);
 			default:
 				throw new InvalidParameterException("Invalid URI: " + uri);
 		}
@@ -226,12 +261,44 @@ public class AndokuContentProvider extends ContentProvider {
 		}
 	}
 
-	private void bulkInsertPuzzle(Uri uri, ContentValues[] valuesArray) {
+	private int bulkInsertPuzzle(Uri uri, ContentValues[] valuesArray) {
 		long folderId = parseFolderId(uri);
+		String duplicates = parseDuplicatesMode(uri);
+
+		// puzzles of this batch by fingerprint, to detect duplicates within the batch itself
+		Map<Long, PuzzleInfo> batch = duplicates.equals(DUPLICATES_ALLOW)
+				? null
+				: new HashMap<Long, PuzzleInfo>();
 
+		// validate the whole batch before writing anything
+		int count = 0;
+		PuzzleInfo[] puzzles = new PuzzleInfo[valuesArray.length];
 		for (ContentValues values : valuesArray) {
-			insertPuzzle(uri, values, folderId);
+			PuzzleInfo puzzleInfo = createPuzzleInfo(values);
+
+			if (batch != null) {
+				PuzzleInfo previous = batch.put(puzzleInfo.getFingerprint(), puzzleInfo);
+				boolean duplicate = (previous != null && previous.isEquivalent(puzzleInfo))
+						|| db.findDuplicatePuzzle(puzzleInfo) != null;
+				if (duplicate) {
+					if (duplicates.equals(DUPLICATES_REPORT))
+						throw new InvalidParameterException("Duplicate puzzle: " + puzzleInfo);
+					continue;
+				}
+			}
+
+			puzzles[count++] = puzzleInfo;
 		}
+
+		if (count == 0)
+			return 0;
+
+		db.insertPuzzles(folderId, puzzles, count);
+
+		// one notification for the whole batch instead of one per puzzle
+		getContext().getContentResolver().notifyChange(getPuzzlesUri(folderId), null);
+
+		return count;
 	}
 
 	private Uri insertFolder(Uri uri, ContentValues values) {
@@ -292,24 +359,55 @@ public class AndokuContentProvider extends ContentProvider {
 
 	private Uri insertPuzzle(Uri uri, ContentValues values, long folderId) {
 		PuzzleInfo puzzleInfo = createPuzzleInfo(values);
+
+		String duplicates = parseDuplicatesMode(uri);
+		if (!duplicates.equals(DUPLICATES_ALLOW)) {
+			long[] existing = db.findDuplicatePuzzle(puzzleInfo);
+			if (existing != null) {
+				Uri existingUri = ContentUris.withAppendedId(getPuzzlesUri(existing[0]),
+						existing[1]);
+				if (duplicates.equals(DUPLICATES_REPORT))
+					throw new InvalidParameterException("Duplicate puzzle: " + existingUri);
+
+				// tells the client that nothing has been inserted
+				return existingUri.buildUpon().appendQueryParameter(PARAM_SKIPPED, "true").build();
+			}
+		}
+
 		long puzzleId = db.insertPuzzle(folderId, puzzleInfo);
 
-		Uri puzzleUri = ContentUris.withAppendedId(uri, puzzleId);
+		Uri puzzleUri = ContentUris.withAppendedId(getPuzzlesUri(folderId), puzzleId);
 		getContext().getContentResolver().notifyChange(puzzleUri, null);
 		return puzzleUri;
 	}
 
+	private String parseDuplicatesMode(Uri uri) {
+		String duplicates = uri.getQueryParameter(PARAM_DUPLICATES);
+		if (duplicates == null)
+			return DUPLICATES_ALLOW;
+
+		if (duplicates.equals(DUPLICATES_ALLOW) || duplicates.equals(DUPLICATES_SKIP)
+				|| duplicates.equals(DUPLICATES_REPORT))
+			return duplicates;
+
+		throw new InvalidParameterException("Invalid duplicates mode: " + duplicates);
+	}
+
+	private static Uri getPuzzlesUri(long folderId) {
+		return Uri.withAppendedPath(ContentUris.withAppendedId(CONTENT_URI, folderId), PATH_PUZZLES);
+	}
+
 	// TODO: support sizes != 9x9
 	private PuzzleInfo createPuzzleInfo(ContentValues values) {
 		String clues = values.getAsString(KEY_CLUES);
 		if (clues == null)
 			throw new InvalidParameterException("Missing clues");
 
-		clues = clues.trim().replace('0', '.');
-		if (!PuzzleInfo.Builder.isValidClues(clues))
+		String normalizedClues = PuzzleInfo.Builder.normalizeClues(clues);
+		if (normalizedClues == null)
 			throw new InvalidParameterException("Invalid clues: " + clues);
 
-		PuzzleInfo.Builder builder = new PuzzleInfo.Builder(clues);
+		PuzzleInfo.Builder builder = new PuzzleInfo.Builder(normalizedClues);
 
 		String name = values.getAsString(KEY_NAME);
 		if (name != null) {
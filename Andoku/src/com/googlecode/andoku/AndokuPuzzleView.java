@@ -20,16 +20,19 @@
 
 package com.googlecode.andoku;
 
-import java.util.HashSet;
+import java.util.Arrays;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.PointF;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Paint.FontMetrics;
 import android.graphics.drawable.Drawable;
+import android.os.Debug;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
@@ -69,6 +72,31 @@ public class AndokuPuzzleView extends View {
 
 	private Position markedPosition;
 
+	// area colors and extra regions do not change during a game so they get rendered into a
+	// bitmap once; grid lines and region borders have to be painted on top of the values so
+	// only their coordinates are cached
+	private Bitmap staticLayer;
+	private boolean staticLayerValid;
+	private float[] gridLines;
+	private float[] regionBorderLines;
+	private final RectF outerBorderRect = new RectF();
+
+	// symbols 0 to size - 1 followed by a question mark for hidden preview clues
+	private final GlyphAtlas valueGlyphs = new GlyphAtlas();
+	private final GlyphAtlas clueGlyphs = new GlyphAtlas();
+	private final GlyphAtlas previewClueGlyphs = new GlyphAtlas();
+	private boolean glyphAtlasesValid;
+
+	// union of the cells reported through addDirtyCell() since the last invalidateDirtyCells()
+	private final Rect dirtyRect = new Rect();
+	// for every cell the bounding cells of the region error markers drawn through it, packed as
+	// (minRow, minCol, maxRow, maxCol) bytes, or -1 if there are none
+	private int[] errorExtents = new int[0];
+
+	private final Rect clipBounds = new Rect();
+
+	private RenderMetrics renderMetrics;
+
 	public AndokuPuzzleView(Context context, AttributeSet attrs) {
 		super(context, attrs);
 
@@ -77,6 +105,8 @@ public class AndokuPuzzleView extends View {
 
 	public void setTheme(Theme theme) {
 		this.theme = theme;
+		staticLayerValid = false;
+		glyphAtlasesValid = false;
 
 		setCurrentTextSizeOnTheme();
 
@@ -90,6 +120,12 @@ public class AndokuPuzzleView extends View {
 		this.puzzle = puzzle;
 		size = puzzle == null ? 0 : puzzle.getSize();
 		multiValuesPainter.setPuzzleSize(size);
+		staticLayerValid = false;
+		glyphAtlasesValid = false;
+
+		dirtyRect.setEmpty();
+		errorExtents = new int[size * size];
+		Arrays.fill(errorExtents, -1);
 
 		requestLayout();
 		invalidate();
@@ -167,6 +203,58 @@ public class AndokuPuzzleView extends View {
 				.ceil(y1));
 	}
 
+	/**
+	 * Adds the given cell to the region that gets repainted by the next call to
+	 * {@link #invalidateDirtyCells()}. Region error markers running through the cell are
+	 * included because changing the cell removes them.
+	 */
+	public void addDirtyCell(int row, int col) {
+		if (puzzle == null)
+			return;
+
+		final int extent = errorExtents[row * size + col];
+		if (extent == -1)
+			addDirtyCells(row, col, row, col);
+		else
+			addDirtyCells(extent >>> 24, (extent >> 16) & 0xff, (extent >> 8) & 0xff, extent & 0xff);
+	}
+
+	public void invalidateDirtyCells() {
+		if (dirtyRect.isEmpty())
+			return;
+
+		if (Constants.LOG_V)
+			Log.v(TAG, "invalidateDirtyCells(" + dirtyRect + ")");
+
+		invalidate(dirtyRect);
+		dirtyRect.setEmpty();
+	}
+
+	private void addDirtyCells(int minRow, int minCol, int maxRow, int maxCol) {
+		int left = (int) Math.floor(offsetX + minCol * cellWidth);
+		int top = (int) Math.floor(offsetY + minRow * cellHeight);
+		int right = (int) Math.ceil(offsetX + (maxCol + 1) * cellWidth);
+		int bottom = (int) Math.ceil(offsetY + (maxRow + 1) * cellHeight);
+		dirtyRect.union(left, top, right, bottom);
+	}
+
+	/**
+	 * Starts recording draw times and allocation counts into the given metrics or stops recording
+	 * if <code>metrics</code> is <code>null</code>.
+	 */
+	public void setRenderMetrics(RenderMetrics metrics) {
+		if (metrics != null && renderMetrics == null)
+			Debug.startAllocCounting();
+		else if (metrics == null && renderMetrics != null)
+			Debug.stopAllocCounting();
+
+		renderMetrics = metrics;
+	}
+
+	public RenderMetrics getRenderMetrics() {
+		return renderMetrics;
+	}
+
 	public void setPaused(boolean paused) {
 		if (this.paused == paused)
 			return;
@@ -188,30 +276,37 @@ public class AndokuPuzzleView extends View {
 		if (puzzle == null)
 			return;
 
-		long t0 = System.currentTimeMillis();
+		final RenderMetrics metrics = renderMetrics;
+		if (metrics != null)
+			metrics.beginFrame(System.nanoTime(), Debug.getThreadAllocCount());
+
+		long t0 = System.nanoTime();
 		onDraw0(canvas);
-		long t1 = System.currentTimeMillis();
+		long t1 = System.nanoTime();
+
+		if (metrics != null)
+			metrics.endFrame(t1, Debug.getThreadAllocCount());
 
 		if (Constants.LOG_V)
-			Log.v(TAG, "Draw time: " + (t1 - t0));
+			Log.v(TAG, "Draw time: " + (t1 - t0) / 1000 + " us");
 	}
 
 	private void onDraw0(Canvas canvas) {
-		if (Constants.LOG_V)
-			Log.v(TAG, "onDraw(" + canvas.getClipBounds() + ")");
-
 		canvas.save();
 		canvas.translate(offsetX, offsetY);
 		canvas.clipRect(0, 0, size * cellWidth, size * cellHeight);
 
-		Rect clipBounds = canvas.getClipBounds();
+		canvas.getClipBounds(clipBounds);
 
-		if (theme.isDrawAreaColors(puzzle.getPuzzleType()))
-			drawAreaColors(canvas, clipBounds);
-		else
-			drawBackground(canvas);
+		if (Constants.LOG_V)
+			Log.v(TAG, "onDraw(" + clipBounds + ")");
+
+		if (!staticLayerValid)
+			renderStaticLayer();
 
-		drawExtraRegions(canvas, clipBounds);
+		canvas.drawBitmap(staticLayer, 0, 0, null);
+
+		endLayer(RenderMetrics.LAYER_BACKGROUND);
 
 		if (puzzle.isSolved())
 			drawCongrats(canvas);
@@ -223,30 +318,82 @@ public class AndokuPuzzleView extends View {
 			drawMarkedPosition(canvas);
 		}
 
-		if (!preview && puzzle.hasErrors())
+		endLayer(RenderMetrics.LAYER_OVERLAYS);
+
+		if (!preview && puzzle.hasErrors()) {
+			updateErrorExtents();
 			drawErrors(canvas, clipBounds);
+		}
+		else {
+			Arrays.fill(errorExtents, -1);
+		}
+
+		endLayer(RenderMetrics.LAYER_ERRORS);
 
 		drawValues(canvas, clipBounds);
 
+		endLayer(RenderMetrics.LAYER_VALUES);
+
 		drawGrid(canvas);
 
-		drawRegionBorders(canvas, clipBounds);
+		drawRegionBorders(canvas);
 
 		canvas.restore();
 
 		drawOuterBorder(canvas);
+
+		endLayer(RenderMetrics.LAYER_GRID);
 	}
 
-	private void drawAreaColors(Canvas canvas, Rect clipBounds) {
+	private void endLayer(int layer) {
+		if (renderMetrics != null)
+			renderMetrics.endLayer(layer, System.nanoTime());
+	}
+
+	private void renderStaticLayer() {
+		if (Constants.LOG_V)
+			Log.v(TAG, "renderStaticLayer()");
+
+		int width = Math.max(1, (int) Math.ceil(size * cellWidth));
+		int height = Math.max(1, (int) Math.ceil(size * cellHeight));
+		if (staticLayer == null || staticLayer.getWidth() != width
+				|| staticLayer.getHeight() != height) {
+			recycleStaticLayer();
+			staticLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		}
+		else {
+			staticLayer.eraseColor(Color.TRANSPARENT);
+		}
+
+		Canvas canvas = new Canvas(staticLayer);
+
+		if (theme.isDrawAreaColors(puzzle.getPuzzleType()))
+			drawAreaColors(canvas);
+		else
+			drawBackground(canvas);
+
+		drawExtraRegions(canvas);
+
+		gridLines = createGridLines();
+		regionBorderLines = createRegionBorderLines();
+
+		staticLayerValid = true;
+	}
+
+	private void recycleStaticLayer() {
+		if (staticLayer != null) {
+			staticLayer.recycle();
+			staticLayer = null;
+		}
+
+		staticLayerValid = false;
+	}
+
+	private void drawAreaColors(Canvas canvas) {
 		for (int row = 0; row < size; row++) {
 			float y = row * cellHeight;
-			if (y > clipBounds.bottom || y + cellHeight < clipBounds.top)
-				continue;
-
 			for (int col = 0; col < size; col++) {
 				float x = col * cellWidth;
-				if (x > clipBounds.right || x + cellWidth < clipBounds.left)
-					continue;
 
 				canvas.save();
 				canvas.translate(x, y);
@@ -270,16 +417,11 @@ public class AndokuPuzzleView extends View {
 		canvas.drawColor(theme.getPuzzleBackgroundColor());
 	}
 
-	private void drawExtraRegions(Canvas canvas, Rect clipBounds) {
+	private void drawExtraRegions(Canvas canvas) {
 		for (int row = 0; row < size; row++) {
 			float y = row * cellHeight;
-			if (y > clipBounds.bottom || y + cellHeight < clipBounds.top)
-				continue;
-
 			for (int col = 0; col < size; col++) {
 				float x = col * cellWidth;
-				if (x > clipBounds.right || x + cellWidth < clipBounds.left)
-					continue;
 
 				canvas.save();
 				canvas.translate(x, y);
@@ -325,9 +467,9 @@ public class AndokuPuzzleView extends View {
 				if (x > clipBounds.right || x + cellWidth < clipBounds.left)
 					continue;
 
-				final ValueSet values = puzzle.getValues(row, col);
-				if (values.contains(highlightedDigit)) {
-					drawHighlightedcell(canvas, values.size(), x, y);
+				final int values = puzzle.getValuesMask(row, col);
+				if ((values & 1 << highlightedDigit.intValue()) != 0) {
+					drawHighlightedcell(canvas, ValueSet.size(values), x, y);
 				}
 			}
 		}
@@ -374,23 +516,27 @@ public class AndokuPuzzleView extends View {
 
 		float radius = Math.min(cellWidth, cellHeight) * 0.4f;
 
-		final HashSet<RegionError> regionErrors = puzzle.getRegionErrors();
-
-		final HashSet<Position> regionErrorPositions = getUniquePositions(regionErrors);
-		for (Position p : regionErrorPositions) {
-			float x = p.col * cellWidth;
-			if (x > clipBounds.right || x + cellWidth < clipBounds.left)
-				continue;
-			float y = p.row * cellHeight;
+		// every cell with a region error extent takes part in at least one region error
+		for (int row = 0; row < size; row++) {
+			float y = row * cellHeight;
 			if (y > clipBounds.bottom || y + cellHeight < clipBounds.top)
 				continue;
 
-			float cx = x + cellWidth / 2;
-			float cy = y + cellHeight / 2;
-			canvas.drawCircle(cx, cy, radius, errorPaint);
+			for (int col = 0; col < size; col++) {
+				if (errorExtents[row * size + col] == -1)
+					continue;
+
+				float x = col * cellWidth;
+				if (x > clipBounds.right || x + cellWidth < clipBounds.left)
+					continue;
+
+				float cx = x + cellWidth / 2;
+				float cy = y + cellHeight / 2;
+				canvas.drawCircle(cx, cy, radius, errorPaint);
+			}
 		}
 
-		for (RegionError error : regionErrors) {
+		for (RegionError error : puzzle.getRegionErrors()) {
 			float cx1 = error.p1.col * cellWidth + cellWidth / 2;
 			float cy1 = error.p1.row * cellHeight + cellHeight / 2;
 
@@ -438,18 +584,36 @@ public class AndokuPuzzleView extends View {
 		}
 	}
 
-	private HashSet<Position> getUniquePositions(final HashSet<RegionError> regionErrors) {
-		HashSet<Position> positions = new HashSet<Position>();
+	private void updateErrorExtents() {
+		Arrays.fill(errorExtents, -1);
 
-		for (RegionError error : regionErrors) {
-			positions.add(error.p1);
-			positions.add(error.p2);
+		for (RegionError error : puzzle.getRegionErrors()) {
+			int minRow = Math.min(error.p1.row, error.p2.row);
+			int minCol = Math.min(error.p1.col, error.p2.col);
+			int maxRow = Math.max(error.p1.row, error.p2.row);
+			int maxCol = Math.max(error.p1.col, error.p2.col);
+			addErrorExtent(error.p1, minRow, minCol, maxRow, maxCol);
+			addErrorExtent(error.p2, minRow, minCol, maxRow, maxCol);
+		}
+	}
+
+	private void addErrorExtent(Position p, int minRow, int minCol, int maxRow, int maxCol) {
+		final int idx = p.row * size + p.col;
+		final int extent = errorExtents[idx];
+		if (extent != -1) {
+			minRow = Math.min(minRow, extent >>> 24);
+			minCol = Math.min(minCol, (extent >> 16) & 0xff);
+			maxRow = Math.max(maxRow, (extent >> 8) & 0xff);
+			maxCol = Math.max(maxCol, extent & 0xff);
 		}
 
-		return positions;
+		errorExtents[idx] = minRow << 24 | minCol << 16 | maxRow << 8 | maxCol;
 	}
 
 	private void drawValues(Canvas canvas, Rect clipBounds) {
+		if (!glyphAtlasesValid)
+			renderGlyphAtlases();
+
 		previewClueCounter = 0;
 
 		for (int row = 0; row < size; row++) {
@@ -473,72 +637,135 @@ public class AndokuPuzzleView extends View {
 	}
 
 	private void drawValues(Canvas canvas, int row, int col) {
-		ValueSet values = puzzle.getValues(row, col);
-		if (values.isEmpty())
+		final int values = puzzle.getValuesMask(row, col);
+		if (values == 0)
 			return;
 
 		if (preview && !puzzle.isSolved()) {
 			if (puzzle.isClue(row, col)) {
 				boolean show = previewClueCounter++ % 3 != 0;
-				String dv = show ? String.valueOf(theme.getSymbol(values.nextValue(0))) : "?";
-				canvas.drawText(dv, cellWidth / 2f, textOffset, theme.getCluePaint(preview));
+				int glyph = show ? ValueSet.nextValue(values, 0) : size;
+				previewClueGlyphs.drawGlyph(canvas, glyph, cellWidth / 2f, textOffset);
 			}
 		}
-		else if (values.size() == 1) {
-			String dv = String.valueOf(theme.getSymbol(values.nextValue(0)));
-			Paint paint = puzzle.isClue(row, col) ? theme.getCluePaint(preview) : theme
-					.getValuePaint();
-			canvas.drawText(dv, cellWidth / 2f, textOffset, paint);
+		else if (ValueSet.isSingle(values)) {
+			GlyphAtlas glyphs = puzzle.isClue(row, col) ? getClueGlyphs() : valueGlyphs;
+			glyphs.drawGlyph(canvas, ValueSet.nextValue(values, 0), cellWidth / 2f, textOffset);
 		}
 		else {
 			multiValuesPainter.paintValues(canvas, values);
 		}
 	}
 
+	private GlyphAtlas getClueGlyphs() {
+		return preview ? previewClueGlyphs : clueGlyphs;
+	}
+
+	private void renderGlyphAtlases() {
+		if (Constants.LOG_V)
+			Log.v(TAG, "renderGlyphAtlases()");
+
+		char[] symbols = new char[size + 1];
+		for (int value = 0; value < size; value++) {
+			symbols[value] = theme.getSymbol(value);
+		}
+		symbols[size] = '?';
+
+		valueGlyphs.render(theme.getValuePaint(), symbols);
+		clueGlyphs.render(theme.getCluePaint(false), symbols);
+		previewClueGlyphs.render(theme.getCluePaint(true), symbols);
+
+		glyphAtlasesValid = true;
+	}
+
 	private void drawGrid(Canvas canvas) {
-		Paint gridPaint = theme.getGridPaint();
+		canvas.drawLines(gridLines, theme.getGridPaint());
+	}
+
+	private float[] createGridLines() {
+		float[] lines = new float[(size - 1) * 8];
 
 		float gridWidth = size * cellWidth;
 		float gridHeight = size * cellHeight;
+		int idx = 0;
 		for (int i = 1; i < size; i++) {
 			float x = i * cellWidth;
 			float y = i * cellHeight;
-			canvas.drawLine(0, y, gridWidth, y, gridPaint);
-			canvas.drawLine(x, 0, x, gridHeight, gridPaint);
+			idx = putLine(lines, idx, 0, y, gridWidth, y);
+			idx = putLine(lines, idx, x, 0, x, gridHeight);
 		}
+
+		return lines;
 	}
 
-	private void drawRegionBorders(Canvas canvas, Rect clipBounds) {
-		Paint regionBorderPaint = theme.getRegionBorderPaint();
+	private void drawRegionBorders(Canvas canvas) {
+		canvas.drawLines(regionBorderLines, theme.getRegionBorderPaint());
+	}
 
+	private float[] createRegionBorderLines() {
+		int count = 0;
 		for (int row = 0; row < size; row++) {
-			float y = row * cellHeight;
-			if (y > clipBounds.bottom || y + cellHeight < clipBounds.top)
-				continue;
+			for (int col = 0; col < size; col++) {
+				if (isRegionBorderAbove(row, col))
+					count++;
+				if (isRegionBorderLeft(row, col))
+					count++;
+			}
+		}
 
+		float[] lines = new float[count * 4];
+
+		int idx = 0;
+		for (int row = 0; row < size; row++) {
+			float y = row * cellHeight;
 			for (int col = 0; col < size; col++) {
 				float x = col * cellWidth;
-				if (x > clipBounds.right || x + cellWidth < clipBounds.left)
-					continue;
 
-				if (row > 0 && puzzle.getAreaCode(row, col) != puzzle.getAreaCode(row - 1, col)) {
-					canvas.drawLine(x, y, x + cellWidth, y, regionBorderPaint);
-				}
-				if (col > 0 && puzzle.getAreaCode(row, col) != puzzle.getAreaCode(row, col - 1)) {
-					canvas.drawLine(x, y, x, y + cellHeight, regionBorderPaint);
-				}
+				if (isRegionBorderAbove(row, col))
+					idx = putLine(lines, idx, x, y, x + cellWidth, y);
+				if (isRegionBorderLeft(row, col))
+					idx = putLine(lines, idx, x, y, x, y + cellHeight);
 			}
 		}
+
+		return lines;
+	}
+
+	private boolean isRegionBorderAbove(int row, int col) {
+		return row > 0 && puzzle.getAreaCode(row, col) != puzzle.getAreaCode(row - 1, col);
+	}
+
+	private boolean isRegionBorderLeft(int row, int col) {
+		return col > 0 && puzzle.getAreaCode(row, col) != puzzle.getAreaCode(row, col - 1);
+	}
+
+	private static int putLine(float[] lines, int idx, float x0, float y0, float x1, float y1) {
+		lines[idx++] = x0;
+		lines[idx++] = y0;
+		lines[idx++] = x1;
+		lines[idx++] = y1;
+		return idx;
 	}
 
 	private void drawOuterBorder(Canvas canvas) {
 		Paint paint = theme.getOuterBorderPaint();
 		float radius = theme.getOuterBorderRadius();
-		float width = paint.getStrokeWidth() / 2;
-		RectF rect = new RectF(width, width, getMeasuredWidth() - width, getMeasuredHeight() - width);
-		canvas.drawRoundRect(rect, radius, radius, paint);
+		canvas.drawRoundRect(outerBorderRect, radius, radius, paint);
 	}
 
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+
+		recycleStaticLayer();
+
+		valueGlyphs.recycle();
+		clueGlyphs.recycle();
+		previewClueGlyphs.recycle();
+		glyphAtlasesValid = false;
+
+		multiValuesPainter.recycle();
+	}
 
 	@Override
 	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
@@ -596,12 +823,24 @@ public class AndokuPuzzleView extends View {
 
 		int gridWidth = width - getPaddingLeft() - getPaddingRight();
 		int gridHeight = height - getPaddingTop() - getPaddingBottom();
-		cellWidth = gridWidth / (float) size;
-		cellHeight = gridHeight / (float) size;
+		float cellWidth = gridWidth / (float) size;
+		float cellHeight = gridHeight / (float) size;
+		if (cellWidth != this.cellWidth || cellHeight != this.cellHeight) {
+			this.cellWidth = cellWidth;
+			this.cellHeight = cellHeight;
+			staticLayerValid = false;
+		}
 		offsetX = getPaddingLeft();
 		offsetY = getPaddingTop();
 
-		textSize = Math.min(cellWidth, cellHeight) * 0.8f;
+		float borderWidth = theme.getOuterBorderPaint().getStrokeWidth() / 2;
+		outerBorderRect.set(borderWidth, borderWidth, width - borderWidth, height - borderWidth);
+
+		float textSize = Math.min(cellWidth, cellHeight) * 0.8f;
+		if (textSize != this.textSize) {
+			this.textSize = textSize;
+			glyphAtlasesValid = false;
+		}
 		setCurrentTextSizeOnTheme();
 		calcTextOffset();
 
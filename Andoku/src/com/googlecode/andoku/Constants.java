@@ -37,6 +37,9 @@ public class Constants {
 
 	public static final boolean LOG_V = false;
 
+	// records draw times and allocations of the puzzle view and adds a menu item to report them
+	public static final boolean RENDER_METRICS = false;
+
 	private Constants() {
 	}
 }
@@ -0,0 +1,106 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Paint.FontMetrics;
+
+/**
+ * Pre-rasterized strip of symbols rendered with a single paint. Drawing a glyph blits a region of
+ * the strip instead of laying out the text again.
+ */
+public class GlyphAtlas {
+	private static final int PADDING = 2;
+
+	private final Rect src = new Rect();
+	private final Rect dst = new Rect();
+
+	private Bitmap bitmap;
+	private int numGlyphs;
+	private int glyphWidth;
+	private int glyphHeight;
+	private float baseline;
+
+	public GlyphAtlas() {
+	}
+
+	/**
+	 * Renders the given symbols with the given paint. The paint is expected to use
+	 * {@link android.graphics.Paint.Align#CENTER}.
+	 */
+	public void render(Paint paint, char[] symbols) {
+		float maxWidth = 0;
+		for (char symbol : symbols) {
+			maxWidth = Math.max(maxWidth, paint.measureText(String.valueOf(symbol)));
+		}
+
+		FontMetrics fontMetrics = paint.getFontMetrics();
+
+		numGlyphs = symbols.length;
+		glyphWidth = (int) Math.ceil(maxWidth) + 2 * PADDING;
+		glyphHeight = (int) Math.ceil(fontMetrics.bottom - fontMetrics.top) + 2 * PADDING;
+		baseline = PADDING - fontMetrics.top;
+
+		int width = Math.max(1, numGlyphs * glyphWidth);
+		if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != glyphHeight) {
+			recycle();
+			bitmap = Bitmap.createBitmap(width, glyphHeight, Bitmap.Config.ARGB_8888);
+		}
+		else {
+			bitmap.eraseColor(Color.TRANSPARENT);
+		}
+
+		Canvas canvas = new Canvas(bitmap);
+		for (int i = 0; i < numGlyphs; i++) {
+			float x = i * glyphWidth + glyphWidth / 2f;
+			canvas.drawText(symbols, i, 1, x, baseline, paint);
+		}
+	}
+
+	/**
+	 * Draws the glyph with the given index centered horizontally on <code>x</code> with its
+	 * baseline at <code>y</code>, just like {@link Canvas#drawText} would.
+	 */
+	public void drawGlyph(Canvas canvas, int index, float x, float y) {
+		if (index < 0 || index >= numGlyphs)
+			throw new IllegalArgumentException();
+
+		int left = index * glyphWidth;
+		src.set(left, 0, left + glyphWidth, glyphHeight);
+
+		int dx = Math.round(x - glyphWidth / 2f);
+		int dy = Math.round(y - baseline);
+		dst.set(dx, dy, dx + glyphWidth, dy + glyphHeight);
+
+		canvas.drawBitmap(bitmap, src, dst, null);
+	}
+
+	public void recycle() {
+		if (bitmap != null) {
+			bitmap.recycle();
+			bitmap = null;
+		}
+	}
+}
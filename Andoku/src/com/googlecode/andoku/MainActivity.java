@@ -31,6 +31,7 @@ import android.widget.Button;
 import com.google.ads.AdRequest;
 import com.google.ads.AdView;
 import com.googlecode.andoku.db.AndokuDatabase;
+import com.googlecode.andoku.db.FingerprintUpdater;
 import com.googlecode.andokusquid.R;
 
 public class MainActivity extends Activity {
@@ -68,6 +69,8 @@ public class MainActivity extends Activity {
 
 		importedPuzzlesFolderId = db.getOrCreateFolder(Constants.IMPORTED_PUZZLES_FOLDER);
 
+		FingerprintUpdater.start(this);
+
 		resumeGameButton = (Button) findViewById(R.id.resumeGameButton);
 		resumeGameButton.setOnClickListener(new OnClickListener() {
 			public void onClick(View v) {
@@ -29,6 +29,10 @@ import com.googlecode.andokusquid.R;
 
 public class MultiValuesPainter {
 	private Theme theme;
+	private int puzzleSize;
+
+	private final GlyphAtlas glyphAtlas = new GlyphAtlas();
+	private boolean glyphAtlasValid;
 
 	private float textOffset;
 	private float baselineDist;
@@ -42,10 +46,14 @@ public class MultiValuesPainter {
 
 	public void setTheme(Theme theme) {
 		this.theme = theme;
+		glyphAtlasValid = false;
 	}
 
 	public void setPuzzleSize(int puzzleSize) {
-		// TODO
+		if (this.puzzleSize != puzzleSize) {
+			this.puzzleSize = puzzleSize;
+			glyphAtlasValid = false;
+		}
 	}
 
 	public void setCellSize(float cellSizeX, float cellSizeY) {
@@ -56,21 +64,41 @@ public class MultiValuesPainter {
 		setFontSize(fontSize);
 	}
 
-	public void paintValues(Canvas canvas, ValueSet values) {
-		for (int value = values.nextValue(0); value != -1; value = values.nextValue(value + 1)) {
+	public void paintValues(Canvas canvas, int values) {
+		if (!glyphAtlasValid)
+			renderGlyphAtlas();
+
+		for (int value = ValueSet.nextValue(values, 0); value != -1; value = ValueSet
+				.nextValue(values, value + 1)) {
 			int vrow = value / 3;
 			int vcol = value % 3;
-			String dv = String.valueOf(theme.getSymbol(value));
 			float py = textOffset + vrow * baselineDist;
 			float px = vcol == 0 ? xOffset : (vcol == 1 ? cellWidth / 2f : cellWidth - xOffset);
-			Paint paint = theme.getDigitPaint();
-			canvas.drawText(dv, px, py, paint);
+			glyphAtlas.drawGlyph(canvas, value, px, py);
+		}
+	}
+
+	public void recycle() {
+		glyphAtlas.recycle();
+		glyphAtlasValid = false;
+	}
+
+	private void renderGlyphAtlas() {
+		char[] symbols = new char[puzzleSize];
+		for (int value = 0; value < puzzleSize; value++) {
+			symbols[value] = theme.getSymbol(value);
 		}
+
+		glyphAtlas.render(theme.getDigitPaint(), symbols);
+		glyphAtlasValid = true;
 	}
 
 	private void setFontSize(float fontSize) {
 		Paint digitPaint = theme.getDigitPaint();
-		digitPaint.setTextSize(fontSize);
+		if (digitPaint.getTextSize() != fontSize) {
+			digitPaint.setTextSize(fontSize);
+			glyphAtlasValid = false;
+		}
 
 		FontMetrics fontMetrics = digitPaint.getFontMetrics();
 		float fontHeight = -fontMetrics.ascent - fontMetrics.descent;
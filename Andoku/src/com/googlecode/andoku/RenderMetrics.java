@@ -0,0 +1,162 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku;
+
+import java.util.Arrays;
+
+/**
+ * Collects per-layer draw times and allocation counts of the most recent frames. Recording a
+ * frame does not allocate; only {@link #report()} does.
+ */
+public class RenderMetrics {
+	public static final int LAYER_BACKGROUND = 0;
+	public static final int LAYER_OVERLAYS = 1;
+	public static final int LAYER_ERRORS = 2;
+	public static final int LAYER_VALUES = 3;
+	public static final int LAYER_GRID = 4;
+	public static final int NUM_LAYERS = 5;
+
+	private static final String[] LAYER_NAMES = { "background", "overlays", "errors", "values",
+			"grid" };
+
+	private final int windowSize;
+
+	private final long[] frameNanos;
+	private final long[][] layerNanos;
+	private final long[] frameAllocations;
+	private final long[] scratch;
+
+	private int frameCount;
+	private int current;
+	private long frameStart;
+	private long layerStart;
+	private int allocationsStart;
+
+	public RenderMetrics(int windowSize) {
+		if (windowSize <= 0)
+			throw new IllegalArgumentException();
+
+		this.windowSize = windowSize;
+
+		frameNanos = new long[windowSize];
+		layerNanos = new long[NUM_LAYERS][windowSize];
+		frameAllocations = new long[windowSize];
+		scratch = new long[windowSize];
+	}
+
+	public void reset() {
+		frameCount = 0;
+	}
+
+	public void beginFrame(long nanos, int allocations) {
+		current = frameCount % windowSize;
+		for (int layer = 0; layer < NUM_LAYERS; layer++)
+			layerNanos[layer][current] = 0;
+
+		frameStart = nanos;
+		layerStart = nanos;
+		allocationsStart = allocations;
+	}
+
+	/**
+	 * Attributes the time since the start of the frame or the end of the previous layer to the
+	 * given layer.
+	 */
+	public void endLayer(int layer, long nanos) {
+		layerNanos[layer][current] += nanos - layerStart;
+		layerStart = nanos;
+	}
+
+	public void endFrame(long nanos, int allocations) {
+		frameNanos[current] = nanos - frameStart;
+		frameAllocations[current] = allocations - allocationsStart;
+		frameCount++;
+	}
+
+	/**
+	 * Returns the total number of frames recorded since creation or the last {@link #reset()}.
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Returns the given percentile (0 to 100) of the frame times in the window in nanoseconds.
+	 */
+	public long getFrameNanos(int percentile) {
+		return percentile(frameNanos, percentile);
+	}
+
+	public long getLayerNanos(int layer, int percentile) {
+		return percentile(layerNanos[layer], percentile);
+	}
+
+	public long getFrameAllocations(int percentile) {
+		return percentile(frameAllocations, percentile);
+	}
+
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("frames: ").append(frameCount);
+		sb.append(", window: ").append(Math.min(frameCount, windowSize)).append('\n');
+		sb.append("layer        p50 us   p90 us   p99 us\n");
+		appendRow(sb, "frame", frameNanos);
+		for (int layer = 0; layer < NUM_LAYERS; layer++)
+			appendRow(sb, LAYER_NAMES[layer], layerNanos[layer]);
+		sb.append("allocations p50 ").append(getFrameAllocations(50));
+		sb.append(", max ").append(getFrameAllocations(100)).append('\n');
+		return sb.toString();
+	}
+
+	private void appendRow(StringBuilder sb, String name, long[] nanos) {
+		sb.append(name);
+		for (int i = name.length(); i < 10; i++)
+			sb.append(' ');
+
+		appendMicros(sb, percentile(nanos, 50));
+		appendMicros(sb, percentile(nanos, 90));
+		appendMicros(sb, percentile(nanos, 99));
+		sb.append('\n');
+	}
+
+	private void appendMicros(StringBuilder sb, long nanos) {
+		String micros = String.valueOf(nanos / 1000);
+		for (int i = micros.length(); i < 9; i++)
+			sb.append(' ');
+		sb.append(micros);
+	}
+
+	private long percentile(long[] values, int percentile) {
+		if (percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException();
+
+		final int count = Math.min(frameCount, windowSize);
+		if (count == 0)
+			return 0;
+
+		System.arraycopy(values, 0, scratch, 0, count);
+		Arrays.sort(scratch, 0, count);
+
+		// nearest rank
+		int rank = (percentile * count + 99) / 100;
+		return scratch[Math.max(0, rank - 1)];
+	}
+}
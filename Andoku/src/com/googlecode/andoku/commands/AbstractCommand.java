@@ -51,11 +51,30 @@ public abstract class AbstractCommand implements Command<AndokuContext> {
 		return result;
 	}
 
-	protected void restoreValues(AndokuPuzzle puzzle, ValueSet[][] originalValues) {
+	protected void restoreValues(AndokuContext context, ValueSet[][] originalValues) {
+		final int size = context.getPuzzle().getSize();
+
+		for (int row = 0; row < size; row++)
+			for (int col = 0; col < size; col++)
+				setValues(context, row, col, originalValues[row][col]);
+	}
+
+	protected void setValues(AndokuContext context, int row, int col, ValueSet values) {
+		AndokuPuzzle puzzle = context.getPuzzle();
+		if (puzzle.getValues(row, col).equals(values))
+			return;
+
+		puzzle.setValues(row, col, values);
+		context.onValuesChanged(row, col);
+	}
+
+	protected void reportChangedValues(AndokuContext context, ValueSet[][] originalValues) {
+		AndokuPuzzle puzzle = context.getPuzzle();
 		final int size = puzzle.getSize();
 
 		for (int row = 0; row < size; row++)
 			for (int col = 0; col < size; col++)
-				puzzle.setValues(row, col, originalValues[row][col]);
+				if (!puzzle.getValues(row, col).equals(originalValues[row][col]))
+					context.onValuesChanged(row, col);
 	}
 }
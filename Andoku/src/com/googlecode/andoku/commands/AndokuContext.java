@@ -27,4 +27,9 @@ public interface AndokuContext {
 	AndokuPuzzle getPuzzle();
 
 	TickTimer getTimer();
+
+	/**
+	 * Called by commands for every cell whose values they have changed.
+	 */
+	void onValuesChanged(int row, int col);
 }
@@ -42,6 +42,7 @@ public class EliminateValuesCommand extends AbstractCommand {
 		originalValues = saveValues(context.getPuzzle());
 
 		int numberValuesEliminated = context.getPuzzle().eliminateValues();
+		reportChangedValues(context, originalValues);
 
 		long penalty = TIME_PENALTY_PER_ELIMINATED_VALUE * numberValuesEliminated;
 		TickTimer timer = context.getTimer();
@@ -49,11 +50,12 @@ public class EliminateValuesCommand extends AbstractCommand {
 	}
 
 	public void undo(AndokuContext context) {
-		restoreValues(context.getPuzzle(), originalValues);
+		restoreValues(context, originalValues);
 	}
 
 	public void redo(AndokuContext context) {
 		context.getPuzzle().eliminateValues();
+		reportChangedValues(context, originalValues);
 	}
 
 	public void writeToParcel(Parcel dest, int flags) {
@@ -49,11 +49,11 @@ public class SetValuesCommand extends AbstractCommand {
 	}
 
 	public void undo(AndokuContext context) {
-		context.getPuzzle().setValues(position.row, position.col, originalValues);
+		setValues(context, position.row, position.col, originalValues);
 	}
 
 	public void redo(AndokuContext context) {
-		context.getPuzzle().setValues(position.row, position.col, values);
+		setValues(context, position.row, position.col, values);
 	}
 
 	@Override
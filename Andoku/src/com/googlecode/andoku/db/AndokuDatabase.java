@@ -35,13 +35,16 @@ import com.googlecode.andoku.Constants;
 import com.googlecode.andoku.TickTimer;
 import com.googlecode.andoku.model.AndokuPuzzle;
 import com.googlecode.andoku.model.Difficulty;
+import com.googlecode.andoku.model.PuzzleType;
+import com.googlecode.andoku.model.Solution;
 import com.googlecode.andoku.source.PuzzleSourceIds;
+import com.googlecode.andoku.transfer.PuzzleDecoder;
 
 public class AndokuDatabase {
 	private static final String TAG = AndokuDatabase.class.getName();
 
 	public static final String DATABASE_NAME = "save_games.db";
-	private static final int DATABASE_VERSION = 2;
+	private static final int DATABASE_VERSION = 7;
 
 	public static final int ROOT_FOLDER_ID = -1;
 
@@ -60,14 +63,18 @@ public class AndokuDatabase {
 
 	public static final String TABLE_PUZZLES = "puzzles";
 	public static final String COL_FOLDER = "folder";
+	public static final String COL_ORDINAL = "ordinal"; //       0..n-1 within folder
 	public static final String COL_NAME = "name";
 	public static final String COL_DIFFICULTY = "difficulty"; // 0-4|-1
 	public static final String COL_SIZE = "size"; //             9
 	public static final String COL_CLUES = "clues"; //           "...6.12........3......"
 	public static final String COL_AREAS = "areas"; //           "11122223311122222341.."|""
 	public static final String COL_EXTRA_REGIONS = "extra"; //   "X"|"H"|"P"|"C"|""
+	public static final String COL_HASH = "hash"; //             PuzzleInfo.getFingerprint()
 
 	private SQLiteStatement insertPuzzleStatement;
+	private SQLiteStatement insertPuzzleWithOrdinalStatement;
+	private SQLiteStatement nextOrdinalStatement;
 
 	private static final String TABLE_GAMES = "games";
 	public static final String COL_SOURCE = "source";
@@ -78,8 +85,11 @@ public class AndokuDatabase {
 	public static final String COL_SOLVED = "solved";
 	public static final String COL_CREATED_DATE = "created";
 	public static final String COL_MODIFIED_DATE = "modified";
+	public static final String COL_FINGERPRINT = "fingerprint"; // AndokuPuzzle.getFingerprint()
 
-	// indexes for findAllGames() and findGamesInProgress();
+	private SQLiteStatement saveGameStatement;
+
+	// indexes for findAllGames(), findGamesInProgress() and findEquivalentGame();
 	public static final int IDX_GAME_ID = 0;
 	public static final int IDX_GAME_SOURCE = 1;
 	public static final int IDX_GAME_NUMBER = 2;
@@ -92,6 +102,10 @@ public class AndokuDatabase {
 	public static final int IDX_GAME_BY_SOURCE_NUMBER = 0;
 	public static final int IDX_GAME_BY_SOURCE_SOLVED = 1;
 
+	// _id is the key computed by SolutionCache.getKey()
+	private static final String TABLE_SOLUTIONS = "solutions";
+	public static final String COL_SOLUTION = "solution"; //     "987153264574982316.."
+
 	private DatabaseHelper openHelper;
 
 	public AndokuDatabase(Context context) {
@@ -110,6 +124,7 @@ public class AndokuDatabase {
 		db.delete(TABLE_FOLDERS, null, null);
 		db.delete(TABLE_PUZZLES, null, null);
 		db.delete(TABLE_GAMES, null, null);
+		db.delete(TABLE_SOLUTIONS, null, null);
 	}
 
 	public static boolean isValidFolderName(String folderName) {
@@ -300,18 +315,22 @@ public class AndokuDatabase {
 		if (insertPuzzleStatement == null) {
 			SQLiteDatabase db = openHelper.getWritableDatabase();
 			insertPuzzleStatement = db.compileStatement("INSERT INTO " + TABLE_PUZZLES + "("
-					+ COL_FOLDER + ", " + COL_NAME + ", " + COL_DIFFICULTY + ", " + COL_SIZE + ", "
-					+ COL_CLUES + ", " + COL_AREAS + ", " + COL_EXTRA_REGIONS
-					+ ") VALUES (?, ?, ?, ?, ?, ?, ?)");
+					+ COL_FOLDER + ", " + COL_ORDINAL + ", " + COL_NAME + ", " + COL_DIFFICULTY
+					+ ", " + COL_SIZE + ", " + COL_CLUES + ", " + COL_AREAS + ", "
+					+ COL_EXTRA_REGIONS + ", " + COL_HASH + ") VALUES (?, (SELECT COALESCE(MAX("
+					+ COL_ORDINAL + ") + 1, 0) FROM " + TABLE_PUZZLES + " WHERE " + COL_FOLDER
+					+ "=?), ?, ?, ?, ?, ?, ?, ?)");
 		}
 
 		insertPuzzleStatement.bindLong(1, folderId);
-		insertPuzzleStatement.bindString(2, puzzleInfo.getName());
-		insertPuzzleStatement.bindLong(3, puzzleInfo.getDifficulty().ordinal());
-		insertPuzzleStatement.bindLong(4, puzzleInfo.getSize());
-		insertPuzzleStatement.bindString(5, puzzleInfo.getClues());
-		insertPuzzleStatement.bindString(6, puzzleInfo.getAreas());
-		insertPuzzleStatement.bindString(7, puzzleInfo.getExtraRegions());
+		insertPuzzleStatement.bindLong(2, folderId);
+		insertPuzzleStatement.bindString(3, puzzleInfo.getName());
+		insertPuzzleStatement.bindLong(4, puzzleInfo.getDifficulty().ordinal());
+		insertPuzzleStatement.bindLong(5, puzzleInfo.getSize());
+		insertPuzzleStatement.bindString(6, puzzleInfo.getClues());
+		insertPuzzleStatement.bindString(7, puzzleInfo.getAreas());
+		insertPuzzleStatement.bindString(8, puzzleInfo.getExtraRegions());
+		insertPuzzleStatement.bindLong(9, puzzleInfo.getFingerprint());
 
 		long insertedRowId = insertPuzzleStatement.executeInsert();
 		if (insertedRowId == -1)
@@ -320,15 +339,237 @@ public class AndokuDatabase {
 		return insertedRowId;
 	}
 
+	/**
+	 * Inserts the first <code>count</code> puzzles of the given array into the specified folder.
+	 * The next free ordinal is looked up once for the whole batch and all rows are written in a
+	 * single transaction using the same precompiled statement.
+	 */
+	public void insertPuzzles(long folderId, PuzzleInfo[] puzzles, int count) {
+		if (Constants.LOG_V)
+			Log.v(TAG, "insertPuzzles(" + folderId + "," + count + ")");
+
+		SQLiteDatabase db = openHelper.getWritableDatabase();
+
+		if (insertPuzzleWithOrdinalStatement == null) {
+			insertPuzzleWithOrdinalStatement = db.compileStatement("INSERT INTO " + TABLE_PUZZLES
+					+ "(" + COL_FOLDER + ", " + COL_ORDINAL + ", " + COL_NAME + ", "
+					+ COL_DIFFICULTY + ", " + COL_SIZE + ", " + COL_CLUES + ", " + COL_AREAS + ", "
+					+ COL_EXTRA_REGIONS + ", " + COL_HASH + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+			nextOrdinalStatement = db.compileStatement("SELECT COALESCE(MAX(" + COL_ORDINAL
+					+ ") + 1, 0) FROM " + TABLE_PUZZLES + " WHERE " + COL_FOLDER + "=?");
+		}
+
+		db.beginTransaction();
+		try {
+			nextOrdinalStatement.bindLong(1, folderId);
+			long ordinal = nextOrdinalStatement.simpleQueryForLong();
+
+			final SQLiteStatement statement = insertPuzzleWithOrdinalStatement;
+			for (int i = 0; i < count; i++) {
+				PuzzleInfo puzzleInfo = puzzles[i];
+
+				statement.bindLong(1, folderId);
+				statement.bindLong(2, ordinal++);
+				statement.bindString(3, puzzleInfo.getName());
+				statement.bindLong(4, puzzleInfo.getDifficulty().ordinal());
+				statement.bindLong(5, puzzleInfo.getSize());
+				statement.bindString(6, puzzleInfo.getClues());
+				statement.bindString(7, puzzleInfo.getAreas());
+				statement.bindString(8, puzzleInfo.getExtraRegions());
+				statement.bindLong(9, puzzleInfo.getFingerprint());
+
+				if (statement.executeInsert() == -1)
+					throw new SQLException("Could not create puzzle " + puzzleInfo);
+			}
+
+			db.setTransactionSuccessful();
+		}
+		finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Looks for a puzzle that is equivalent to the given one in any folder, i.e. that has the same
+	 * clues, areas and extra regions up to a relabeling of the digits and a symmetry of the grid.
+	 * Returns its folder ID and puzzle ID or <code>null</code> if there is no such puzzle. Puzzles
+	 * whose fingerprint has not been computed yet (see {@link #updateMissingFingerprints}) are
+	 * never reported.
+	 */
+	public long[] findDuplicatePuzzle(PuzzleInfo puzzleInfo) {
+		if (Constants.LOG_V)
+			Log.v(TAG, "findDuplicatePuzzle(" + puzzleInfo + ")");
+
+		SQLiteDatabase db = openHelper.getReadableDatabase();
+
+		String[] columns = { COL_FOLDER, COL_ID, COL_CLUES, COL_AREAS, COL_EXTRA_REGIONS };
+		String selection = COL_HASH + "=?";
+		String[] selectionArgs = { String.valueOf(puzzleInfo.getFingerprint()) };
+
+		Cursor cursor = db.query(TABLE_PUZZLES, columns, selection, selectionArgs, null, null, null);
+		try {
+			while (cursor.moveToNext()) {
+				// rule out fingerprint collisions
+				PuzzleInfo candidate = new PuzzleInfo.Builder(cursor.getString(2)).setAreas(
+						cursor.getString(3)).setExtraRegions(cursor.getString(4)).build();
+				if (puzzleInfo.isEquivalent(candidate))
+					return new long[] { cursor.getLong(0), cursor.getLong(1) };
+			}
+
+			return null;
+		}
+		finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Computes the fingerprints of at most <code>maxPuzzles</code> puzzles with an ID greater than
+	 * <code>afterId</code> that do not have one yet. Returns the ID of the last puzzle looked at or
+	 * <code>-1</code> if there are none left; in that case the games of imported puzzles that lack
+	 * a fingerprint take it from their puzzle. Games of the built-in puzzles get theirs the next
+	 * time they are saved.
+	 */
+	public long updateMissingFingerprints(long afterId, int maxPuzzles) {
+		if (Constants.LOG_V)
+			Log.v(TAG, "updateMissingFingerprints(" + afterId + "," + maxPuzzles + ")");
+
+		SQLiteDatabase db = openHelper.getWritableDatabase();
+
+		db.beginTransaction();
+		try {
+			long lastId = updatePuzzleFingerprints(db, afterId, maxPuzzles);
+			if (lastId == -1)
+				updateGameFingerprints(db);
+
+			db.setTransactionSuccessful();
+
+			return lastId;
+		}
+		finally {
+			db.endTransaction();
+		}
+	}
+
+	private long updatePuzzleFingerprints(SQLiteDatabase db, long afterId, int maxPuzzles) {
+		String[] columns = { COL_ID, COL_CLUES, COL_AREAS, COL_EXTRA_REGIONS };
+		String selection = COL_HASH + " IS NULL AND " + COL_ID + ">?";
+		String[] selectionArgs = { String.valueOf(afterId) };
+		Cursor cursor = db.query(TABLE_PUZZLES, columns, selection, selectionArgs, null, null,
+				COL_ID, String.valueOf(maxPuzzles));
+		try {
+			if (!cursor.moveToFirst())
+				return -1;
+
+			SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_PUZZLES + " SET "
+					+ COL_HASH + "=? WHERE " + COL_ID + "=?");
+			try {
+				long puzzleId;
+				do {
+					puzzleId = cursor.getLong(0);
+					String areas = cursor.isNull(2) ? "" : cursor.getString(2);
+					String extraRegions = cursor.isNull(3) ? "" : cursor.getString(3);
+
+					long fingerprint;
+					try {
+						fingerprint = new PuzzleInfo.Builder(cursor.getString(1)).setAreas(areas)
+								.setExtraRegions(extraRegions).build().getFingerprint();
+					}
+					catch (IllegalArgumentException e) {
+						// stays unknown; afterId makes sure it is not looked at again
+						Log.w(TAG, "Invalid puzzle " + puzzleId, e);
+						continue;
+					}
+
+					update.bindLong(1, fingerprint);
+					update.bindLong(2, puzzleId);
+					update.execute();
+				}
+				while (cursor.moveToNext());
+
+				return puzzleId;
+			}
+			finally {
+				update.close();
+			}
+		}
+		finally {
+			cursor.close();
+		}
+	}
+
+	private void updateGameFingerprints(SQLiteDatabase db) {
+		String[] columns = { COL_ID, COL_SOURCE, COL_NUMBER };
+		String selection = COL_FINGERPRINT + " IS NULL";
+		Cursor cursor = db.query(TABLE_GAMES, columns, selection, null, null, null, null);
+		try {
+			if (cursor.getCount() == 0)
+				return;
+
+			SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_GAMES + " SET "
+					+ COL_FINGERPRINT + "=(SELECT " + COL_HASH + " FROM " + TABLE_PUZZLES
+					+ " WHERE " + COL_FOLDER + "=? AND " + COL_ORDINAL + "=?) WHERE " + COL_ID
+					+ "=?");
+			try {
+				while (cursor.moveToNext()) {
+					String sourceId = cursor.getString(1);
+					if (!PuzzleSourceIds.isDbSource(sourceId))
+						continue;
+
+					update.bindLong(1, PuzzleSourceIds.getDbFolderId(sourceId));
+					update.bindLong(2, cursor.getInt(2));
+					update.bindLong(3, cursor.getLong(0));
+					update.execute();
+				}
+			}
+			finally {
+				update.close();
+			}
+		}
+		finally {
+			cursor.close();
+		}
+	}
+
 	public void deletePuzzle(long puzzleId) {
 		if (Constants.LOG_V)
 			Log.v(TAG, "deletePuzzle(" + puzzleId + ")");
 
 		SQLiteDatabase db = openHelper.getWritableDatabase();
 
-		String whereClause = COL_ID + "=?";
-		String[] whereArgs = { String.valueOf(puzzleId) };
-		db.delete(TABLE_PUZZLES, whereClause, whereArgs);
+		db.beginTransaction();
+		try {
+			String[] columns = { COL_FOLDER, COL_ORDINAL };
+			String selection = COL_ID + "=?";
+			String[] selectionArgs = { String.valueOf(puzzleId) };
+			Cursor cursor = db.query(TABLE_PUZZLES, columns, selection, selectionArgs, null, null,
+					null);
+
+			long folderId;
+			int ordinal;
+			try {
+				if (!cursor.moveToFirst())
+					return;
+
+				folderId = cursor.getLong(0);
+				ordinal = cursor.getInt(1);
+			}
+			finally {
+				cursor.close();
+			}
+
+			db.delete(TABLE_PUZZLES, selection, selectionArgs);
+
+			// keep ordinals dense
+			db.execSQL("UPDATE " + TABLE_PUZZLES + " SET " + COL_ORDINAL + "=" + COL_ORDINAL
+					+ "-1 WHERE " + COL_FOLDER + "=? AND " + COL_ORDINAL + ">?", new Object[] {
+					folderId, ordinal });
+
+			db.setTransactionSuccessful();
+		}
+		finally {
+			db.endTransaction();
+		}
 	}
 
 	public int getNumberOfPuzzles(long folderId) {
@@ -355,40 +596,22 @@ public class AndokuDatabase {
 
 		SQLiteDatabase db = openHelper.getReadableDatabase();
 
-		String[] columns = { COL_ID };
-		String selection = COL_FOLDER + "=?";
-		String[] selectionArgs = { String.valueOf(folderId) };
-
-		Cursor cursor = db.query(TABLE_PUZZLES, columns, selection, selectionArgs, null, null, null,
-				null);
+		String[] columns = { COL_ORDINAL };
+		String selection = COL_ID + "=? AND " + COL_FOLDER + "=?";
+		String[] selectionArgs = { String.valueOf(puzzleId), String.valueOf(folderId) };
 
+		Cursor cursor = db.query(TABLE_PUZZLES, columns, selection, selectionArgs, null, null, null);
 		try {
-			int total = cursor.getCount();
-			return getPuzzleNumber(cursor, puzzleId, 0, total - 1);
+			if (cursor.moveToFirst())
+				return cursor.getInt(0);
+			else
+				return -1;
 		}
 		finally {
 			cursor.close();
 		}
 	}
 
-	private int getPuzzleNumber(Cursor cursor, long puzzleId, int fromNumber, int toNumber) {
-		if (fromNumber > toNumber)
-			return -1;
-
-		int candidate = (fromNumber + toNumber) / 2;
-		if (!cursor.moveToPosition(candidate))
-			throw new IllegalStateException();
-
-		int id = cursor.getInt(0);
-		if (id == puzzleId)
-			return candidate;
-
-		if (id < puzzleId)
-			return getPuzzleNumber(cursor, puzzleId, candidate + 1, toNumber);
-		else
-			return getPuzzleNumber(cursor, puzzleId, fromNumber, candidate - 1);
-	}
-
 	public PuzzleInfo loadPuzzle(long folderId, int number) {
 		if (Constants.LOG_V)
 			Log.v(TAG, "loadPuzzle(" + folderId + "," + number + ")");
@@ -397,12 +620,10 @@ public class AndokuDatabase {
 
 		String[] columns = { COL_NAME, COL_DIFFICULTY, COL_SIZE, COL_CLUES, COL_AREAS,
 				COL_EXTRA_REGIONS };
-		String selection = COL_FOLDER + "=?";
-		String[] selectionArgs = { String.valueOf(folderId) };
-		String limit = number + ",1";
+		String selection = COL_FOLDER + "=? AND " + COL_ORDINAL + "=?";
+		String[] selectionArgs = { String.valueOf(folderId), String.valueOf(number) };
 
-		Cursor cursor = db.query(TABLE_PUZZLES, columns, selection, selectionArgs, null, null, null,
-				limit);
+		Cursor cursor = db.query(TABLE_PUZZLES, columns, selection, selectionArgs, null, null, null);
 		try {
 			if (cursor.moveToNext()) {
 				PuzzleInfo.Builder builder = new PuzzleInfo.Builder(cursor.getString(3));
@@ -422,54 +643,48 @@ public class AndokuDatabase {
 	}
 
 	public void saveGame(PuzzleId puzzleId, AndokuPuzzle puzzle, TickTimer timer) {
+		saveGame(puzzleId, puzzle.getPuzzleType(), puzzle.getFingerprint(), puzzle.saveToMemento(),
+				timer.getTime(), puzzle.isSolved());
+	}
+
+	public synchronized void saveGame(PuzzleId puzzleId, PuzzleType puzzleType, long fingerprint,
+			byte[] memento, long time, boolean solved) {
 		if (Constants.LOG_V)
 			Log.v(TAG, "saveGame(" + puzzleId + ")");
 
 		long now = System.currentTimeMillis();
 
-		SQLiteDatabase db = openHelper.getWritableDatabase();
-
-		db.beginTransaction();
-		try {
-			String[] columns = { COL_ID };
-			String selection = COL_SOURCE + "=? AND " + COL_NUMBER + "=?";
-			String[] selectionArgs = { puzzleId.puzzleSourceId, String.valueOf(puzzleId.number) };
-			Cursor cursor = db.query(TABLE_GAMES, columns, selection, selectionArgs, null, null, null);
-
-			long rowId = -1;
-			if (cursor.moveToFirst()) {
-				rowId = cursor.getLong(0);
-			}
-
-			cursor.close();
-
-			ContentValues values = new ContentValues();
-			values.put(COL_PUZZLE, puzzle.saveToMemento());
-			values.put(COL_TIMER, timer.getTime());
-			values.put(COL_SOLVED, puzzle.isSolved());
-			values.put(COL_MODIFIED_DATE, now);
-
-			if (rowId == -1) {
-				values.put(COL_SOURCE, puzzleId.puzzleSourceId);
-				values.put(COL_NUMBER, puzzleId.number);
-				values.put(COL_TYPE, puzzle.getPuzzleType().ordinal());
-				values.put(COL_CREATED_DATE, now);
-				long insertedRowId = db.insert(TABLE_GAMES, null, values);
-				if (insertedRowId == -1)
-					return;
-			}
-			else {
-				int updated = db.update(TABLE_GAMES, values, COL_ID + "=?", new String[] { String
-						.valueOf(rowId) });
-				if (updated == 0)
-					return;
-			}
+		if (saveGameStatement == null) {
+			SQLiteDatabase db = openHelper.getWritableDatabase();
 
-			db.setTransactionSuccessful();
-		}
-		finally {
-			db.endTransaction();
+			// Replaces an existing row for (source, number) in a single statement. The subselects
+			// keep the row ID and the creation date of the replaced row; both are answered by the
+			// unique index on (source, number).
+			String existing = " FROM " + TABLE_GAMES + " WHERE " + COL_SOURCE + "=? AND "
+					+ COL_NUMBER + "=?";
+			saveGameStatement = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_GAMES + "("
+					+ COL_ID + ", " + COL_SOURCE + ", " + COL_NUMBER + ", " + COL_TYPE + ", "
+					+ COL_PUZZLE + ", " + COL_TIMER + ", " + COL_SOLVED + ", " + COL_CREATED_DATE
+					+ ", " + COL_MODIFIED_DATE + ", " + COL_FINGERPRINT + ") VALUES ((SELECT "
+					+ COL_ID + existing + "), ?, ?, ?, ?, ?, ?, COALESCE((SELECT "
+					+ COL_CREATED_DATE + existing + "), ?), ?, ?)");
 		}
+
+		saveGameStatement.bindString(1, puzzleId.puzzleSourceId);
+		saveGameStatement.bindLong(2, puzzleId.number);
+		saveGameStatement.bindString(3, puzzleId.puzzleSourceId);
+		saveGameStatement.bindLong(4, puzzleId.number);
+		saveGameStatement.bindLong(5, puzzleType.ordinal());
+		saveGameStatement.bindBlob(6, memento);
+		saveGameStatement.bindLong(7, time);
+		saveGameStatement.bindLong(8, solved ? 1 : 0);
+		saveGameStatement.bindString(9, puzzleId.puzzleSourceId);
+		saveGameStatement.bindLong(10, puzzleId.number);
+		saveGameStatement.bindLong(11, now);
+		saveGameStatement.bindLong(12, now);
+		saveGameStatement.bindLong(13, fingerprint);
+
+		saveGameStatement.executeInsert();
 	}
 
 	public boolean loadGame(PuzzleId puzzleId, AndokuPuzzle puzzle, TickTimer timer) {
@@ -503,6 +718,93 @@ public class AndokuDatabase {
 		}
 	}
 
+	/**
+	 * Looks for a saved game of a puzzle that is equivalent to the given one but has a different
+	 * puzzle ID, for example the same puzzle imported into another folder. Solved games take
+	 * precedence over games in progress. The returned cursor holds at most one row with the same
+	 * columns as {@link #findGamesInProgress()}. Games without a fingerprint (see
+	 * {@link #updateMissingFingerprints}) are never reported.
+	 */
+	public Cursor findEquivalentGame(PuzzleId puzzleId, long fingerprint) {
+		if (Constants.LOG_V)
+			Log.v(TAG, "findEquivalentGame(" + puzzleId + "," + fingerprint + ")");
+
+		SQLiteDatabase db = openHelper.getReadableDatabase();
+
+		String[] columns = { COL_ID, COL_SOURCE, COL_NUMBER, COL_TYPE, COL_TIMER, COL_CREATED_DATE,
+				COL_MODIFIED_DATE };
+		String selection = COL_FINGERPRINT + "=? AND NOT (" + COL_SOURCE + "=? AND " + COL_NUMBER
+				+ "=?)";
+		String[] selectionArgs = { String.valueOf(fingerprint), puzzleId.puzzleSourceId,
+				String.valueOf(puzzleId.number) };
+		String orderBy = COL_SOLVED + " DESC, " + COL_MODIFIED_DATE + " DESC";
+		String limit = "1";
+		return db.query(TABLE_GAMES, columns, selection, selectionArgs, null, null, orderBy,
+				limit);
+	}
+
+	public boolean hasSolution(long key) {
+		SQLiteDatabase db = openHelper.getReadableDatabase();
+
+		String[] columns = { COL_ID };
+		String selection = COL_ID + "=?";
+		String[] selectionArgs = { String.valueOf(key) };
+		Cursor cursor = db.query(TABLE_SOLUTIONS, columns, selection, selectionArgs, null, null,
+				null);
+		try {
+			return cursor.moveToNext();
+		}
+		finally {
+			cursor.close();
+		}
+	}
+
+	public Solution loadSolution(long key) {
+		if (Constants.LOG_V)
+			Log.v(TAG, "loadSolution(" + key + ")");
+
+		SQLiteDatabase db = openHelper.getReadableDatabase();
+
+		String[] columns = { COL_SOLUTION };
+		String selection = COL_ID + "=?";
+		String[] selectionArgs = { String.valueOf(key) };
+		Cursor cursor = db.query(TABLE_SOLUTIONS, columns, selection, selectionArgs, null, null,
+				null);
+		try {
+			if (!cursor.moveToFirst())
+				return null;
+
+			try {
+				return PuzzleDecoder.decodeValues(cursor.getString(0));
+			}
+			catch (IllegalArgumentException e) {
+				Log.w(TAG, "Invalid solution for " + key, e);
+				return null;
+			}
+		}
+		finally {
+			cursor.close();
+		}
+	}
+
+	public void saveSolution(long key, Solution solution) {
+		if (Constants.LOG_V)
+			Log.v(TAG, "saveSolution(" + key + ")");
+
+		SQLiteDatabase db = openHelper.getWritableDatabase();
+
+		final int size = solution.getSize();
+		StringBuilder sb = new StringBuilder(size * size);
+		for (int row = 0; row < size; row++)
+			for (int col = 0; col < size; col++)
+				sb.append((char) ('1' + solution.getValue(row, col)));
+
+		ContentValues values = new ContentValues();
+		values.put(COL_ID, key);
+		values.put(COL_SOLUTION, sb.toString());
+		db.replace(TABLE_SOLUTIONS, null, values);
+	}
+
 	public void delete(PuzzleId puzzleId) {
 		if (Constants.LOG_V)
 			Log.v(TAG, "delete(" + puzzleId + ")");
@@ -772,12 +1074,22 @@ public class AndokuDatabase {
 			db.execSQL("CREATE TABLE " + TABLE_PUZZLES + " (" + COL_ID + " INTEGER PRIMARY KEY,"
 					+ COL_FOLDER + " INTEGER," + COL_NAME + " TEXT, " + COL_DIFFICULTY + " INTEGER, "
 					+ COL_SIZE + " INTEGER, " + COL_CLUES + " TEXT, " + COL_AREAS + " TEXT, "
-					+ COL_EXTRA_REGIONS + " TEXT);");
+					+ COL_EXTRA_REGIONS + " TEXT, " + COL_ORDINAL + " INTEGER, " + COL_HASH
+					+ " INTEGER);");
+
+			createPuzzlesIndex(db);
+			createPuzzlesHashIndex(db);
 
 			db.execSQL("CREATE TABLE " + TABLE_GAMES + " (" + COL_ID + " INTEGER PRIMARY KEY,"
 					+ COL_SOURCE + " TEXT," + COL_NUMBER + " INTEGER," + COL_TYPE + " INTEGER,"
 					+ COL_PUZZLE + " BLOB," + COL_TIMER + " INTEGER," + COL_SOLVED + " BOOLEAN,"
-					+ COL_CREATED_DATE + " INTEGER," + COL_MODIFIED_DATE + " INTEGER" + ");");
+					+ COL_CREATED_DATE + " INTEGER," + COL_MODIFIED_DATE + " INTEGER,"
+					+ COL_FINGERPRINT + " INTEGER" + ");");
+
+			createGamesIndexes(db);
+			createGamesFingerprintIndex(db);
+
+			createSolutionsTable(db);
 		}
 
 		@Override
@@ -786,8 +1098,23 @@ public class AndokuDatabase {
 
 			db.beginTransaction();
 			try {
-				if (oldVersion < 2)
+				// upgradeV1ToV2() recreates the tables through onCreate() so the schema is
+				// up-to-date afterwards
+				if (oldVersion < 2) {
 					upgradeV1ToV2(db);
+				}
+				else {
+					if (oldVersion < 3)
+						upgradeV2ToV3(db);
+					if (oldVersion < 4)
+						upgradeV3ToV4(db);
+					if (oldVersion < 5)
+						upgradeV4ToV5(db);
+					if (oldVersion < 6)
+						upgradeV5ToV6(db);
+					if (oldVersion < 7)
+						upgradeV6ToV7(db);
+				}
 
 				db.setTransactionSuccessful();
 			}
@@ -827,5 +1154,133 @@ public class AndokuDatabase {
 
 			Log.d(TAG, "Upgraded from version 1 to 2.");
 		}
+
+		private void upgradeV2ToV3(SQLiteDatabase db) {
+			Log.d(TAG, "Upgrading from version 2 to 3.");
+
+			db.execSQL("ALTER TABLE " + TABLE_PUZZLES + " ADD COLUMN " + COL_ORDINAL + " INTEGER;");
+
+			// number the puzzles of every folder in the order of their IDs, which is the order
+			// loadPuzzle() used to return them in
+			SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_PUZZLES + " SET "
+					+ COL_ORDINAL + "=? WHERE " + COL_ID + "=?");
+			try {
+				String[] columns = { COL_ID, COL_FOLDER };
+				String orderBy = COL_FOLDER + ", " + COL_ID;
+				Cursor cursor = db.query(TABLE_PUZZLES, columns, null, null, null, null, orderBy);
+				try {
+					long folderId = 0;
+					int ordinal = 0;
+					while (cursor.moveToNext()) {
+						long puzzleId = cursor.getLong(0);
+						long folder = cursor.getLong(1);
+						if (cursor.isFirst() || folder != folderId) {
+							folderId = folder;
+							ordinal = 0;
+						}
+
+						update.bindLong(1, ordinal++);
+						update.bindLong(2, puzzleId);
+						update.execute();
+					}
+				}
+				finally {
+					cursor.close();
+				}
+			}
+			finally {
+				update.close();
+			}
+
+			createPuzzlesIndex(db);
+
+			Log.d(TAG, "Upgraded from version 2 to 3.");
+		}
+
+		private void createPuzzlesIndex(SQLiteDatabase db) {
+			// SQLite appends the row ID to every index entry, so this index also covers lookups by
+			// folder and ID
+			db.execSQL("CREATE INDEX " + TABLE_PUZZLES + "_" + COL_FOLDER + "_" + COL_ORDINAL
+					+ " ON " + TABLE_PUZZLES + " (" + COL_FOLDER + ", " + COL_ORDINAL + ");");
+		}
+
+		private void upgradeV3ToV4(SQLiteDatabase db) {
+			Log.d(TAG, "Upgrading from version 3 to 4.");
+
+			// saveGame() never created duplicates but make sure the unique index can be built;
+			// keep the most recently modified game
+			String g = "g.";
+			String games = TABLE_GAMES + ".";
+			db.execSQL("DELETE FROM " + TABLE_GAMES + " WHERE EXISTS (SELECT 1 FROM " + TABLE_GAMES
+					+ " g WHERE " + g + COL_SOURCE + "=" + games + COL_SOURCE + " AND " + g
+					+ COL_NUMBER + "=" + games + COL_NUMBER + " AND (" + g + COL_MODIFIED_DATE + ">"
+					+ games + COL_MODIFIED_DATE + " OR (" + g + COL_MODIFIED_DATE + "=" + games
+					+ COL_MODIFIED_DATE + " AND " + g + COL_ID + ">" + games + COL_ID + ")));");
+
+			createGamesIndexes(db);
+
+			Log.d(TAG, "Upgraded from version 3 to 4.");
+		}
+
+		private void upgradeV4ToV5(SQLiteDatabase db) {
+			Log.d(TAG, "Upgrading from version 4 to 5.");
+
+			// FingerprintUpdater fills in the values
+			db.execSQL("ALTER TABLE " + TABLE_PUZZLES + " ADD COLUMN " + COL_HASH + " INTEGER;");
+
+			createPuzzlesHashIndex(db);
+
+			Log.d(TAG, "Upgraded from version 4 to 5.");
+		}
+
+		private void upgradeV5ToV6(SQLiteDatabase db) {
+			Log.d(TAG, "Upgrading from version 5 to 6.");
+
+			createSolutionsTable(db);
+
+			Log.d(TAG, "Upgraded from version 5 to 6.");
+		}
+
+		private void upgradeV6ToV7(SQLiteDatabase db) {
+			Log.d(TAG, "Upgrading from version 6 to 7.");
+
+			// The hash column used to be an exact hash of clues, areas and extra regions. Computing
+			// the fingerprints of all puzzles and games would take too long for onUpgrade(), so
+			// they are cleared here and filled in by FingerprintUpdater in the background.
+			db.execSQL("UPDATE " + TABLE_PUZZLES + " SET " + COL_HASH + "=NULL;");
+
+			db.execSQL("ALTER TABLE " + TABLE_GAMES + " ADD COLUMN " + COL_FINGERPRINT
+					+ " INTEGER;");
+
+			createGamesFingerprintIndex(db);
+
+			Log.d(TAG, "Upgraded from version 6 to 7.");
+		}
+
+		private void createSolutionsTable(SQLiteDatabase db) {
+			db.execSQL("CREATE TABLE " + TABLE_SOLUTIONS + " (" + COL_ID + " INTEGER PRIMARY KEY,"
+					+ COL_SOLUTION + " TEXT);");
+		}
+
+		private void createPuzzlesHashIndex(SQLiteDatabase db) {
+			db.execSQL("CREATE INDEX " + TABLE_PUZZLES + "_" + COL_HASH + " ON " + TABLE_PUZZLES
+					+ " (" + COL_HASH + ");");
+		}
+
+		private void createGamesFingerprintIndex(SQLiteDatabase db) {
+			// used by findEquivalentGame()
+			db.execSQL("CREATE INDEX " + TABLE_GAMES + "_" + COL_FINGERPRINT + " ON " + TABLE_GAMES
+					+ " (" + COL_FINGERPRINT + ");");
+		}
+
+		private void createGamesIndexes(SQLiteDatabase db) {
+			// used by saveGame(), loadGame(), delete(), findGamesBySource() and getStatistics()
+			db.execSQL("CREATE UNIQUE INDEX " + TABLE_GAMES + "_" + COL_SOURCE + "_" + COL_NUMBER
+					+ " ON " + TABLE_GAMES + " (" + COL_SOURCE + ", " + COL_NUMBER + ");");
+
+			// used by findGamesInProgress(); partial indexes require sqlite 3.8
+			db.execSQL("CREATE INDEX " + TABLE_GAMES + "_" + COL_SOLVED + "_" + COL_MODIFIED_DATE
+					+ " ON " + TABLE_GAMES + " (" + COL_SOLVED + ", " + COL_MODIFIED_DATE + ");");
+		}
 	}
 }
@@ -0,0 +1,215 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.db;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+import com.googlecode.andoku.Constants;
+import com.googlecode.andoku.TickTimer;
+import com.googlecode.andoku.model.AndokuPuzzle;
+import com.googlecode.andoku.model.PuzzleType;
+
+/**
+ * Writes saved games to the database on a single background thread. Snapshots of the same game
+ * that are queued before the next write coalesce into the most recent one.
+ */
+public class AutoSaveQueue {
+	private static final String TAG = AutoSaveQueue.class.getName();
+
+	private final AndokuDatabase db;
+	private final long delayMillis;
+
+	private final ScheduledExecutorService executor;
+	private final Runnable writer = new Runnable() {
+		public void run() {
+			writePending();
+		}
+	};
+
+	private final Map<PuzzleId, Snapshot> pending = new LinkedHashMap<PuzzleId, Snapshot>();
+	private Future<?> scheduled;
+	private boolean closed;
+
+	public AutoSaveQueue(AndokuDatabase db, long delayMillis) {
+		this.db = db;
+		this.delayMillis = delayMillis;
+
+		executor = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	/**
+	 * Takes a snapshot of the given puzzle and timer and writes it to the database after a short
+	 * delay. Does nothing once the queue has been closed.
+	 */
+	public void save(PuzzleId puzzleId, AndokuPuzzle puzzle, TickTimer timer) {
+		Snapshot snapshot = new Snapshot(puzzle.getPuzzleType(), puzzle.getFingerprint(), puzzle
+				.saveToMemento(), timer.getTime(), puzzle.isSolved());
+
+		synchronized (this) {
+			if (closed) {
+				Log.w(TAG, "save() after close(); dropping snapshot of " + puzzleId);
+				return;
+			}
+
+			pending.put(puzzleId, snapshot);
+
+			if (scheduled == null)
+				scheduled = executor.schedule(writer, delayMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Drops a queued snapshot of the given game so that it does not resurrect a game that is about
+	 * to be deleted.
+	 */
+	public synchronized void discard(PuzzleId puzzleId) {
+		pending.remove(puzzleId);
+	}
+
+	/**
+	 * Writes all queued snapshots and waits until they have been written. Does nothing once the
+	 * queue has been closed.
+	 */
+	public void flush() {
+		if (Constants.LOG_V)
+			Log.v(TAG, "flush()");
+
+		Future<?> future;
+		synchronized (this) {
+			if (closed)
+				return;
+
+			future = executor.submit(writer);
+		}
+
+		await(future);
+	}
+
+	/**
+	 * Flushes the queue and stops the background thread. Subsequent calls to {@link #save},
+	 * {@link #flush} and {@link #close} have no effect.
+	 */
+	public void close() {
+		Future<?> future;
+		synchronized (this) {
+			if (closed)
+				return;
+
+			closed = true;
+
+			// the delayed write would keep the thread alive after shutdown(); the final write
+			// below takes care of everything pending
+			if (scheduled != null) {
+				scheduled.cancel(false);
+				scheduled = null;
+			}
+
+			future = executor.submit(writer);
+			executor.shutdown();
+		}
+
+		await(future);
+	}
+
+	private void writePending() {
+		List<Map.Entry<PuzzleId, Snapshot>> entries;
+		synchronized (this) {
+			scheduled = null;
+
+			if (pending.isEmpty())
+				return;
+
+			entries = new ArrayList<Map.Entry<PuzzleId, Snapshot>>(pending.entrySet());
+			pending.clear();
+		}
+
+		if (Constants.LOG_V)
+			Log.v(TAG, "writing " + entries.size() + " saved game(s)");
+
+		try {
+			db.beginTransaction();
+			try {
+				for (Map.Entry<PuzzleId, Snapshot> entry : entries) {
+					Snapshot snapshot = entry.getValue();
+					db.saveGame(entry.getKey(), snapshot.puzzleType, snapshot.fingerprint,
+							snapshot.memento, snapshot.time, snapshot.solved);
+				}
+
+				db.setTransactionSuccessful();
+			}
+			finally {
+				db.endTransaction();
+			}
+		}
+		catch (RuntimeException e) {
+			Log.e(TAG, "Could not save games", e);
+		}
+	}
+
+	private static void await(Future<?> future) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					future.get();
+					return;
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+				catch (ExecutionException e) {
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		}
+		finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	private static final class Snapshot {
+		final PuzzleType puzzleType;
+		final long fingerprint;
+		final byte[] memento;
+		final long time;
+		final boolean solved;
+
+		Snapshot(PuzzleType puzzleType, long fingerprint, byte[] memento, long time,
+				boolean solved) {
+			this.puzzleType = puzzleType;
+			this.fingerprint = fingerprint;
+			this.memento = memento;
+			this.time = time;
+			this.solved = solved;
+		}
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.db;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Computes the puzzle and game fingerprints that are missing after upgrading the database, on a
+ * low priority background thread. Until then duplicate detection and the played-already lookup
+ * simply do not see the affected rows.
+ */
+public class FingerprintUpdater {
+	private static final String TAG = FingerprintUpdater.class.getName();
+
+	// puzzles per transaction
+	private static final int BATCH_SIZE = 200;
+
+	private static boolean started = false;
+
+	private FingerprintUpdater() {
+	}
+
+	/**
+	 * Starts the background thread unless it has already been started in this process.
+	 */
+	public static synchronized void start(Context context) {
+		if (started)
+			return;
+
+		started = true;
+
+		final Context applicationContext = context.getApplicationContext();
+		new Thread(new Runnable() {
+			public void run() {
+				Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+				update(applicationContext);
+			}
+		}, TAG).start();
+	}
+
+	private static void update(Context context) {
+		AndokuDatabase db = new AndokuDatabase(context);
+		try {
+			long lastId = 0;
+			int batches = 0;
+			while ((lastId = db.updateMissingFingerprints(lastId, BATCH_SIZE)) != -1)
+				batches++;
+
+			if (batches > 0)
+				Log.i(TAG, "Updated fingerprints in " + batches + " batches");
+		}
+		catch (RuntimeException e) {
+			// tried again the next time the app starts
+			Log.w(TAG, "Could not update fingerprints", e);
+		}
+		finally {
+			db.close();
+		}
+	}
+}
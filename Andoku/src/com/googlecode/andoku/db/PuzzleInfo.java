@@ -23,6 +23,9 @@ package com.googlecode.andoku.db;
 import java.util.Locale;
 
 import com.googlecode.andoku.model.Difficulty;
+import com.googlecode.andoku.model.Puzzle;
+import com.googlecode.andoku.model.PuzzleCanonicalizer;
+import com.googlecode.andoku.transfer.PuzzleDecoder;
 
 public class PuzzleInfo {
 	public static final String AREAS_NONE = "";
@@ -40,6 +43,9 @@ public class PuzzleInfo {
 	private final String areas; //        "11122223311122222341.."|""
 	private final String extraRegions; // "X"|"H"|"P"|"C"|""
 
+	private long fingerprint;
+	private boolean fingerprintComputed = false;
+
 	public static final class Builder {
 		private String name = "";
 		private Difficulty difficulty = Difficulty.UNKNOWN;
@@ -112,6 +118,39 @@ public class PuzzleInfo {
 			return true;
 		}
 
+		/**
+		 * Validates the given clues and returns them in canonical form, i.e. without surrounding
+		 * whitespace and with '0' replaced by '.'. Returns <code>null</code> if the clues are not
+		 * valid. Clues that are already in canonical form are returned as they are, without
+		 * allocating a new string.
+		 */
+		public static String normalizeClues(String clues) {
+			int start = 0;
+			int end = clues.length();
+			while (start < end && clues.charAt(start) <= ' ')
+				start++;
+			while (end > start && clues.charAt(end - 1) <= ' ')
+				end--;
+
+			final int length = end - start;
+			if (length != 81) // size 9 only
+				return null;
+
+			boolean hasZeros = false;
+			for (int i = start; i < end; i++) {
+				char c = clues.charAt(i);
+				if (c == '0')
+					hasZeros = true;
+				else if (c != '.' && (c < '1' || c > '9'))
+					return null;
+			}
+
+			if (start != 0 || end != clues.length())
+				clues = clues.substring(start, end);
+
+			return hasZeros ? clues.replace('0', '.') : clues;
+		}
+
 		public boolean isValidName(String name) {
 			return name != null;
 		}
@@ -180,6 +219,40 @@ public class PuzzleInfo {
 		return extraRegions;
 	}
 
+	/**
+	 * Decodes clues, areas and extra regions into a {@link Puzzle}.
+	 */
+	public Puzzle toPuzzle() {
+		return PuzzleDecoder.decode(clues, areas, extraRegions);
+	}
+
+	/**
+	 * Returns the 64 bit fingerprint of the canonical form of this puzzle that is used to detect
+	 * duplicate puzzles, see {@link PuzzleCanonicalizer}. Puzzles that only differ by a relabeling
+	 * of the digits or a symmetry of the grid have the same fingerprint. Name and difficulty do not
+	 * contribute to the fingerprint.
+	 */
+	public long getFingerprint() {
+		if (!fingerprintComputed) {
+			fingerprint = PuzzleCanonicalizer.forCurrentThread().getFingerprint(toPuzzle());
+			fingerprintComputed = true;
+		}
+
+		return fingerprint;
+	}
+
+	/**
+	 * Returns <code>true</code> if the given puzzle is the same as this one up to a relabeling of
+	 * the digits and a symmetry of the grid.
+	 */
+	public boolean isEquivalent(PuzzleInfo other) {
+		if (clues.equals(other.clues) && areas.equals(other.areas)
+				&& extraRegions.equals(other.extraRegions))
+			return true;
+
+		return PuzzleCanonicalizer.forCurrentThread().isEquivalent(toPuzzle(), other.toPuzzle());
+	}
+
 	@Override
 	public String toString() {
 		return name + "|" + clues + "|" + areas + "|" + extraRegions + "|" + difficulty;
@@ -0,0 +1,223 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.db;
+
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.googlecode.andoku.Constants;
+import com.googlecode.andoku.model.ExtraRegion;
+import com.googlecode.andoku.model.Fnv1a;
+import com.googlecode.andoku.model.Position;
+import com.googlecode.andoku.model.Puzzle;
+import com.googlecode.andoku.model.Solution;
+import com.googlecode.andoku.solver.BitboardPuzzleSolver;
+import com.googlecode.andoku.solver.SingleSolutionReporter;
+import com.googlecode.andoku.source.PuzzleSource;
+
+/**
+ * Persistent cache of puzzle solutions, keyed by a fingerprint of the puzzle. Solutions for
+ * upcoming puzzles are computed ahead of time on a low priority background thread.
+ */
+public class SolutionCache {
+	private static final String TAG = SolutionCache.class.getName();
+
+	private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+	private final AndokuDatabase db;
+
+	private final ExecutorService executor;
+	private final Runnable worker = new Runnable() {
+		public void run() {
+			Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+			precomputePending();
+		}
+	};
+
+	// held by the worker while it uses the source or the database; close() takes it, too, so that
+	// the worker never touches them once close() has returned
+	private final Object ioLock = new Object();
+
+	private final LinkedList<Integer> pending = new LinkedList<Integer>();
+	private PuzzleSource source;
+	private boolean running = false;
+	private boolean closed = false;
+
+	public SolutionCache(AndokuDatabase db) {
+		this.db = db;
+
+		executor = Executors.newSingleThreadExecutor();
+	}
+
+	/**
+	 * Returns a 64 bit fingerprint of the clues, areas and extra regions of the given puzzle.
+	 */
+	public static long getKey(Puzzle puzzle) {
+		final int size = puzzle.getSize();
+
+		long hash = Fnv1a.update(Fnv1a.OFFSET_BASIS, size);
+
+		for (int row = 0; row < size; row++)
+			for (int col = 0; col < size; col++)
+				hash = Fnv1a.update(hash, puzzle.getAreaCode(row, col));
+
+		for (ExtraRegion extraRegion : puzzle.getExtraRegions()) {
+			hash = Fnv1a.update(hash, 0xff);
+			for (Position position : extraRegion.positions)
+				hash = Fnv1a.update(hash, position.row * size + position.col);
+		}
+
+		hash = Fnv1a.update(hash, 0xff);
+		for (int row = 0; row < size; row++)
+			for (int col = 0; col < size; col++)
+				hash = Fnv1a.update(hash, puzzle.getValue(row, col) + 1);
+
+		return hash;
+	}
+
+	/**
+	 * Returns the stored solution of the given puzzle or <code>null</code> if there is none.
+	 * Solutions that do not agree with the clues of the puzzle (because of a key collision) are
+	 * ignored.
+	 */
+	public Solution get(Puzzle puzzle) {
+		long key = getKey(puzzle);
+		Solution solution = db.loadSolution(key);
+		if (solution == null)
+			return null;
+
+		if (!solution.agreesWith(puzzle)) {
+			Log.w(TAG, "Ignoring stored solution that does not match puzzle " + key);
+			return null;
+		}
+
+		return solution;
+	}
+
+	public void put(Puzzle puzzle, Solution solution) {
+		db.saveSolution(getKey(puzzle), solution);
+	}
+
+	/**
+	 * Computes and stores the solutions of <code>count</code> puzzles of the given source,
+	 * starting with puzzle <code>first</code>, in the background. Replaces any previous request
+	 * that has not been processed yet.
+	 */
+	public void precompute(PuzzleSource source, int first, int count) {
+		final int numberOfPuzzles = source.numberOfPuzzles();
+
+		synchronized (this) {
+			if (closed)
+				return;
+
+			this.source = source;
+
+			pending.clear();
+			for (int i = 0; i < count && i < numberOfPuzzles; i++)
+				pending.add((first + i) % numberOfPuzzles);
+
+			if (!running) {
+				running = true;
+				executor.execute(worker);
+			}
+		}
+	}
+
+	/**
+	 * Drops all pending requests and waits briefly for the background thread to finish the
+	 * puzzle it is working on. The puzzle source and database must not be closed before; once
+	 * this method returns the background thread no longer uses them.
+	 */
+	public void close() {
+		synchronized (ioLock) {
+			synchronized (this) {
+				closed = true;
+				pending.clear();
+			}
+		}
+
+		executor.shutdown();
+		try {
+			executor.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void precomputePending() {
+		while (true) {
+			final PuzzleSource source;
+			final int number;
+			synchronized (this) {
+				if (pending.isEmpty()) {
+					running = false;
+					return;
+				}
+
+				source = this.source;
+				number = pending.removeFirst();
+			}
+
+			try {
+				precompute(source, number);
+			}
+			catch (RuntimeException e) {
+				Log.w(TAG, "Could not precompute solution of puzzle " + number, e);
+			}
+		}
+	}
+
+	private void precompute(PuzzleSource source, int number) {
+		final Puzzle puzzle;
+		final long key;
+		synchronized (ioLock) {
+			// closed is only written while holding ioLock
+			if (closed)
+				return;
+
+			puzzle = source.load(number).getPuzzle();
+			key = getKey(puzzle);
+			if (db.hasSolution(key))
+				return;
+		}
+
+		if (Constants.LOG_V)
+			Log.v(TAG, "precomputing solution of puzzle " + number);
+
+		SingleSolutionReporter reporter = new SingleSolutionReporter();
+		new BitboardPuzzleSolver().solve(puzzle, reporter);
+
+		Puzzle solution = reporter.getSolution();
+		if (solution == null)
+			return;
+
+		synchronized (ioLock) {
+			if (!closed)
+				db.saveSolution(key, new Solution(solution));
+		}
+	}
+}
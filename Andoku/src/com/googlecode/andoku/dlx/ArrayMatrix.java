@@ -0,0 +1,314 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.dlx;
+
+import java.util.Arrays;
+
+/**
+ * Exact cover matrix for the Dancing Links algorithm that stores its links in parallel
+ * <code>int</code> arrays instead of a graph of {@link Data} objects.
+ * <p>
+ * Node 0 is the root, nodes 1 to <code>numberOfColumns</code> are the column headers and all
+ * following nodes are the 1-bits of the matrix. Columns are identified by their header node, rows
+ * by the order in which they were added (starting at 0).
+ */
+public class ArrayMatrix<P> {
+	public static final int ROOT = 0;
+
+	int[] left;
+	int[] right;
+	int[] up;
+	int[] down;
+	int[] column;
+	int[] rowOf;
+	int[] size;
+
+	private int[] firstNode;
+	private Object[] payloads;
+
+	private final int totalColumns;
+	private int nodeCount;
+	private int rowCount;
+	private int columnCount;
+
+	public ArrayMatrix(int numberOfColumns) {
+		this(numberOfColumns, 0, 0);
+	}
+
+	public ArrayMatrix(int numberOfColumns, int expectedRows, int expectedNodes) {
+		if (numberOfColumns < 0)
+			throw new IllegalArgumentException();
+
+		final int nodeCapacity = 1 + numberOfColumns + Math.max(expectedNodes, 16);
+		left = new int[nodeCapacity];
+		right = new int[nodeCapacity];
+		up = new int[nodeCapacity];
+		down = new int[nodeCapacity];
+		column = new int[nodeCapacity];
+		rowOf = new int[nodeCapacity];
+		size = new int[1 + numberOfColumns];
+
+		final int rowCapacity = Math.max(expectedRows, 16);
+		firstNode = new int[rowCapacity];
+		payloads = new Object[rowCapacity];
+
+		for (int c = 0; c <= numberOfColumns; c++) {
+			left[c] = c == 0 ? numberOfColumns : c - 1;
+			right[c] = c == numberOfColumns ? 0 : c + 1;
+			up[c] = c;
+			down[c] = c;
+			column[c] = c;
+			rowOf[c] = -1;
+		}
+
+		totalColumns = numberOfColumns;
+		nodeCount = numberOfColumns + 1;
+		rowCount = 0;
+		columnCount = numberOfColumns;
+	}
+
+	/**
+	 * Creates a copy of the specified matrix including its current cover state.
+	 */
+	public ArrayMatrix(ArrayMatrix<P> other) {
+		totalColumns = other.totalColumns;
+		size = new int[other.size.length];
+
+		final int nodeCapacity = other.nodeCount;
+		left = new int[nodeCapacity];
+		right = new int[nodeCapacity];
+		up = new int[nodeCapacity];
+		down = new int[nodeCapacity];
+		column = new int[nodeCapacity];
+		rowOf = new int[nodeCapacity];
+
+		final int rowCapacity = Math.max(other.rowCount, 1);
+		firstNode = new int[rowCapacity];
+		payloads = new Object[rowCapacity];
+
+		copyFrom(other);
+	}
+
+	/**
+	 * Resets this matrix to the state of the specified matrix, reusing the arrays of this matrix
+	 * wherever they are large enough. This is considerably cheaper than building up a matrix with
+	 * the same rows from scratch.
+	 */
+	public void copyFrom(ArrayMatrix<P> other) {
+		if (other.totalColumns != totalColumns)
+			throw new IllegalArgumentException("Different number of columns");
+
+		final int nodes = other.nodeCount;
+		if (left.length < nodes) {
+			left = new int[nodes];
+			right = new int[nodes];
+			up = new int[nodes];
+			down = new int[nodes];
+			column = new int[nodes];
+			rowOf = new int[nodes];
+		}
+
+		System.arraycopy(other.left, 0, left, 0, nodes);
+		System.arraycopy(other.right, 0, right, 0, nodes);
+		System.arraycopy(other.up, 0, up, 0, nodes);
+		System.arraycopy(other.down, 0, down, 0, nodes);
+		System.arraycopy(other.column, 0, column, 0, nodes);
+		System.arraycopy(other.rowOf, 0, rowOf, 0, nodes);
+		System.arraycopy(other.size, 0, size, 0, size.length);
+
+		final int rows = other.rowCount;
+		if (firstNode.length < rows) {
+			firstNode = new int[rows];
+			payloads = new Object[rows];
+		}
+
+		System.arraycopy(other.firstNode, 0, firstNode, 0, rows);
+		System.arraycopy(other.payloads, 0, payloads, 0, rows);
+		if (rows < rowCount)
+			Arrays.fill(payloads, rows, rowCount, null);
+
+		nodeCount = nodes;
+		rowCount = rows;
+		columnCount = other.columnCount;
+	}
+
+	/**
+	 * Adds a row to the matrix.
+	 * 
+	 * @param payload an arbitrary object associated with the new row.
+	 * @param columns the columns that contain a 1-bit in the new row, given as column index from 0
+	 *           to <code>numberOfColumns - 1</code>.
+	 * @param count number of valid entries in <code>columns</code>.
+	 * @return the index of the new row.
+	 */
+	public int addRow(P payload, int[] columns, int count) {
+		if (count <= 0)
+			throw new IllegalArgumentException("Empty row");
+
+		ensureNodeCapacity(nodeCount + count);
+		ensureRowCapacity(rowCount + 1);
+
+		final int row = rowCount++;
+		final int first = nodeCount;
+
+		for (int i = 0; i < count; i++) {
+			final int c = columns[i] + 1;
+			if (c < 1 || c > totalColumns)
+				throw new IllegalArgumentException("Invalid column: " + columns[i]);
+
+			final int node = nodeCount++;
+
+			column[node] = c;
+			rowOf[node] = row;
+
+			up[node] = up[c];
+			down[node] = c;
+			down[up[c]] = node;
+			up[c] = node;
+			size[c]++;
+
+			left[node] = node == first ? node : left[first];
+			right[node] = first;
+			right[left[node]] = node;
+			left[first] = node;
+		}
+
+		firstNode[row] = first;
+		payloads[row] = payload;
+
+		return row;
+	}
+
+	@SuppressWarnings("unchecked")
+	public P getPayload(int row) {
+		return (P) payloads[row];
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public int getFirstNode(int row) {
+		return firstNode[row];
+	}
+
+	public int getRow(int node) {
+		return rowOf[node];
+	}
+
+	public int getColumn(int node) {
+		return column[node];
+	}
+
+	public int getSize(int column) {
+		return size[column];
+	}
+
+	public void cover(int c) {
+		final int[] left = this.left;
+		final int[] right = this.right;
+		final int[] up = this.up;
+		final int[] down = this.down;
+		final int[] column = this.column;
+		final int[] size = this.size;
+
+		right[left[c]] = right[c];
+		left[right[c]] = left[c];
+
+		for (int i = down[c]; i != c; i = down[i])
+			for (int j = right[i]; j != i; j = right[j]) {
+				down[up[j]] = down[j];
+				up[down[j]] = up[j];
+				size[column[j]]--;
+			}
+
+		columnCount--;
+	}
+
+	public void uncover(int c) {
+		final int[] left = this.left;
+		final int[] right = this.right;
+		final int[] up = this.up;
+		final int[] down = this.down;
+		final int[] column = this.column;
+		final int[] size = this.size;
+
+		for (int i = up[c]; i != c; i = up[i])
+			for (int j = left[i]; j != i; j = left[j]) {
+				size[column[j]]++;
+				down[up[j]] = j;
+				up[down[j]] = j;
+			}
+
+		right[left[c]] = c;
+		left[right[c]] = c;
+
+		columnCount++;
+	}
+
+	public void eliminateRow(int row) {
+		final int first = firstNode[row];
+
+		cover(column[first]);
+
+		for (int j = right[first]; j != first; j = right[j])
+			cover(column[j]);
+	}
+
+	public int getColumnCount() {
+		return columnCount;
+	}
+
+	public int getTotalColumnCount() {
+		return totalColumns;
+	}
+
+	private void ensureNodeCapacity(int capacity) {
+		if (capacity <= left.length)
+			return;
+
+		final int newCapacity = Math.max(capacity, left.length * 3 / 2);
+		left = grow(left, newCapacity);
+		right = grow(right, newCapacity);
+		up = grow(up, newCapacity);
+		down = grow(down, newCapacity);
+		column = grow(column, newCapacity);
+		rowOf = grow(rowOf, newCapacity);
+	}
+
+	private void ensureRowCapacity(int capacity) {
+		if (capacity <= firstNode.length)
+			return;
+
+		final int newCapacity = Math.max(capacity, firstNode.length * 3 / 2);
+		firstNode = grow(firstNode, newCapacity);
+
+		Object[] newPayloads = new Object[newCapacity];
+		System.arraycopy(payloads, 0, newPayloads, 0, rowCount);
+		payloads = newPayloads;
+	}
+
+	private static int[] grow(int[] array, int newCapacity) {
+		int[] newArray = new int[newCapacity];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+}
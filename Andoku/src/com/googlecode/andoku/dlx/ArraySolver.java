@@ -0,0 +1,279 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.dlx;
+
+/**
+ * Dancing Links solver operating on an {@link ArrayMatrix}.
+ * <p>
+ * The search is iterative and keeps its state in preallocated arrays, so no objects are allocated
+ * while searching. A search can be paused after a given number of updates (row selections) and be
+ * resumed later on.
+ */
+public class ArraySolver {
+	private final ArrayMatrix<?> m;
+	private final ArrayDlxListener listener;
+	private final ArrayColumnComparator columnComparator;
+	private final ArrayRowSorter rowSorter;
+
+	// candidate rows of all levels; rows of different levels never overlap
+	private int[] rows;
+
+	// per level: covered column, range of candidate rows in rows[], next candidate row and the node
+	// of the currently selected row (-1 if none)
+	private int[] levelColumn;
+	private int[] levelEnd;
+	private int[] levelNext;
+	private int[] levelNode;
+
+	private int depth;
+	private int maxDepth = Integer.MAX_VALUE;
+	private boolean started;
+	private boolean finished;
+	private boolean aborted;
+	private long updates;
+
+	public ArraySolver(ArrayMatrix<?> m, ArrayDlxListener listener,
+			ArrayColumnComparator columnComparator, ArrayRowSorter rowSorter) {
+		if (m == null)
+			throw new NullPointerException();
+		if (listener == null)
+			throw new NullPointerException();
+
+		this.m = m;
+		this.listener = listener;
+		this.columnComparator = columnComparator;
+		this.rowSorter = rowSorter;
+
+		reset();
+	}
+
+	/**
+	 * Prepares this solver for a new search. Has to be invoked after the matrix has been modified
+	 * from outside of this solver (for example by {@link ArrayMatrix#copyFrom(ArrayMatrix)}).
+	 */
+	public void reset() {
+		final int maxRows = m.getRowCount();
+		if (rows == null || rows.length < maxRows)
+			rows = new int[maxRows];
+
+		// every level covers at least one column
+		final int maxLevels = m.getColumnCount() + 1;
+		if (levelColumn == null || levelColumn.length < maxLevels) {
+			levelColumn = new int[maxLevels];
+			levelEnd = new int[maxLevels];
+			levelNext = new int[maxLevels];
+			levelNode = new int[maxLevels];
+		}
+
+		depth = -1;
+		started = false;
+		finished = false;
+		aborted = false;
+		updates = 0;
+	}
+
+	/**
+	 * Limits the depth of the search tree. Once <code>maxDepth</code> rows have been selected the
+	 * partial solution is passed to {@link ArrayDlxListener#solutionFound()} as if it were complete.
+	 * This can be used to split the search tree into independent subproblems.
+	 */
+	public void setMaxDepth(int maxDepth) {
+		if (maxDepth < 1)
+			throw new IllegalArgumentException();
+
+		this.maxDepth = maxDepth;
+	}
+
+	public void search() {
+		search(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Searches for solutions but pauses after the specified number of updates.
+	 * 
+	 * @param maxUpdates maximum number of row selections before the search is paused.
+	 * @return <code>true</code> if the search has finished, <code>false</code> if it has been paused
+	 *         and can be resumed by invoking this method again.
+	 */
+	public boolean search(long maxUpdates) {
+		if (finished)
+			return true;
+
+		final long updateLimit = maxUpdates >= Long.MAX_VALUE - updates ? Long.MAX_VALUE : updates
+				+ maxUpdates;
+
+		if (!started) {
+			started = true;
+
+			if (m.getColumnCount() == 0) {
+				aborted = !listener.solutionFound();
+				finished = true;
+				return true;
+			}
+
+			pushLevel(0);
+		}
+
+		final int[] right = m.right;
+		final int[] left = m.left;
+		final int[] column = m.column;
+		final int[] rowOf = m.rowOf;
+
+		while (depth >= 0) {
+			final int d = depth;
+
+			final int selected = levelNode[d];
+			if (selected != -1) {
+				for (int j = left[selected]; j != selected; j = left[j])
+					m.uncover(column[j]);
+
+				listener.deselect(rowOf[selected]);
+
+				levelNode[d] = -1;
+			}
+
+			if (aborted || levelNext[d] == levelEnd[d]) {
+				m.uncover(levelColumn[d]);
+				depth--;
+				continue;
+			}
+
+			if (updates >= updateLimit)
+				return false;
+
+			final int row = rows[levelNext[d]++];
+			updates++;
+
+			if (!listener.select(row)) {
+				aborted = true;
+				continue;
+			}
+
+			final int node = findNode(m.getFirstNode(row), levelColumn[d], column, right);
+			levelNode[d] = node;
+
+			for (int j = right[node]; j != node; j = right[j])
+				m.cover(column[j]);
+
+			if (m.getColumnCount() == 0 || d + 1 >= maxDepth) {
+				if (!listener.solutionFound())
+					aborted = true;
+			}
+			else {
+				pushLevel(levelEnd[d]);
+			}
+		}
+
+		finished = true;
+		return true;
+	}
+
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Stops a paused search for good. All rows that are still selected get deselected and the matrix
+	 * is restored to the state it had before the search started.
+	 */
+	public void abort() {
+		if (finished)
+			return;
+
+		aborted = true;
+
+		if (started)
+			search(Long.MAX_VALUE);
+		else
+			finished = true;
+	}
+
+	/**
+	 * Returns <code>true</code> if the search has been stopped by the listener.
+	 */
+	public boolean isAborted() {
+		return aborted;
+	}
+
+	public long getNumberOfUpdates() {
+		return updates;
+	}
+
+	private void pushLevel(int rowsStart) {
+		final int d = ++depth;
+
+		final int c = chooseColumn();
+		m.cover(c);
+
+		levelColumn[d] = c;
+		levelNext[d] = rowsStart;
+		levelEnd[d] = collectRows(c, rowsStart);
+		levelNode[d] = -1;
+	}
+
+	private static int findNode(int first, int c, int[] column, int[] right) {
+		int node = first;
+		while (column[node] != c)
+			node = right[node];
+		return node;
+	}
+
+	private int chooseColumn() {
+		final int[] right = m.right;
+		final int[] size = m.size;
+
+		int best = -1;
+
+		if (columnComparator == null) {
+			int bestSize = Integer.MAX_VALUE;
+			for (int c = right[ArrayMatrix.ROOT]; c != ArrayMatrix.ROOT; c = right[c]) {
+				if (size[c] < bestSize) {
+					best = c;
+					bestSize = size[c];
+					if (bestSize <= 1)
+						break;
+				}
+			}
+		}
+		else {
+			for (int c = right[ArrayMatrix.ROOT]; c != ArrayMatrix.ROOT; c = right[c])
+				if (best == -1 || columnComparator.compare(m, c, best) < 0)
+					best = c;
+		}
+
+		return best;
+	}
+
+	private int collectRows(int c, int from) {
+		final int[] down = m.down;
+		final int[] rowOf = m.rowOf;
+		final int[] rows = this.rows;
+
+		int idx = from;
+		for (int node = down[c]; node != c; node = down[node])
+			rows[idx++] = rowOf[node];
+
+		if (rowSorter != null)
+			rowSorter.sort(rows, from, idx);
+
+		return idx;
+	}
+}
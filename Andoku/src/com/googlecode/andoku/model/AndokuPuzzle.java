@@ -21,23 +21,21 @@
 package com.googlecode.andoku.model;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataInputStream;
-import java.io.DataOutput;
-import java.io.DataOutputStream;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 
 import android.util.Log;
 
-import com.googlecode.andoku.solver.DlxPuzzleSolver;
+import com.googlecode.andoku.solver.BitboardPuzzleSolver;
 import com.googlecode.andoku.solver.PuzzleSolver;
 import com.googlecode.andoku.solver.SingleSolutionReporter;
 import com.googlecode.andoku.transfer.StandardAreas;
@@ -63,9 +61,18 @@ public class AndokuPuzzle {
 	private Solution solution;
 	private boolean computeSolutionFailed = false;
 
-	private Integer numValuesSet;
+	private long fingerprint;
+	private boolean fingerprintComputed = false;
 
-	private Boolean solved;
+	// number of cells that contain exactly one value
+	private int numValuesSet;
+
+	// number of cells per region (index region id * size + value) that contain exactly that value
+	private int[] valueCounts;
+	// number of values per region that occur more than once
+	private int[] regionConflicts;
+	// number of region/value pairs that occur more than once
+	private int numConflicts;
 
 	// multiple identical values within a single region
 	private HashSet<RegionError> regionErrors;
@@ -75,6 +82,8 @@ public class AndokuPuzzle {
 
 	private boolean restored = false;
 
+	private MementoWriter mementoWriter;
+
 	public AndokuPuzzle(String name, Puzzle puzzle, Difficulty difficulty) {
 		if (puzzle == null)
 			throw new IllegalArgumentException();
@@ -88,6 +97,9 @@ public class AndokuPuzzle {
 		this.difficulty = difficulty;
 		this.extra = obtainExtra(puzzle);
 		this.values = obtainValues(puzzle);
+		this.valueCounts = new int[puzzle.getRegions().length * size];
+		this.regionConflicts = new int[puzzle.getRegions().length];
+		initValueCounts();
 		this.areaColors = new AreaColorGenerator().generate(puzzle);
 		this.numberOfAreaColors = countNumberOfAreaColors();
 		this.regionErrors = new HashSet<RegionError>();
@@ -103,28 +115,53 @@ public class AndokuPuzzle {
 	}
 
 	public byte[] saveToMemento() {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		DataOutputStream out = new DataOutputStream(baos);
+		if (mementoWriter == null)
+			mementoWriter = new MementoWriter(64);
 
-		try {
-			out.writeShort(MAGIC_BYTE_ARRAY);
-			saveVersion5(out);
-			out.close();
+		mementoWriter.reset();
+		mementoWriter.writeShort(MAGIC_BYTE_ARRAY);
+		saveVersion6(mementoWriter);
+
+		return mementoWriter.toByteArray();
+	}
+
+	// Version 6 only stores the cells the player has filled in: a bitmap of the non-clue cells
+	// that are not empty, followed by the value mask of each of these cells as varint. Errors are
+	// stored as bit-packed cell indices.
+	private void saveVersion6(MementoWriter out) {
+		out.writeShort(6); // version
+
+		out.writeVarint(size);
+
+		for (int row = 0; row < size; row++) {
+			for (int col = 0; col < size; col++) {
+				boolean filledIn = !isClue(row, col) && !values[row][col].isEmpty();
+				out.writeBits(filledIn ? 1 : 0, 1);
+			}
 		}
-		catch (IOException e) {
-			// should not happen when writing to byte array
-			throw new IllegalStateException(e);
+
+		for (int row = 0; row < size; row++) {
+			for (int col = 0; col < size; col++) {
+				if (!isClue(row, col) && !values[row][col].isEmpty())
+					out.writeVarint(values[row][col].toInt());
+			}
 		}
 
-		return baos.toByteArray();
-	}
+		out.writeVarint(regionErrors.size());
+		out.writeVarint(cellErrors.size());
 
-	private void saveVersion5(DataOutputStream out) throws IOException {
-		out.writeShort(5); // version
+		final int bitsPerCell = bitsPerCellIndex();
+		for (RegionError error : regionErrors) {
+			out.writeBits(error.p1.row * size + error.p1.col, bitsPerCell);
+			out.writeBits(error.p2.row * size + error.p2.col, bitsPerCell);
+		}
+		for (Position p : cellErrors) {
+			out.writeBits(p.row * size + p.col, bitsPerCell);
+		}
+	}
 
-		writeValues(out, values);
-		writeRegionErrors(out, regionErrors);
-		writeCellErrors(out, cellErrors);
+	private int bitsPerCellIndex() {
+		return 32 - Integer.numberOfLeadingZeros(size * size - 1);
 	}
 
 	public boolean restoreFromMemento(byte[] b) {
@@ -164,6 +201,8 @@ public class AndokuPuzzle {
 		switch (version) {
 			case 5:
 				return restoreFromVersion5(in); // Andoku 1.2.2 and later
+			case 6:
+				return restoreFromVersion6(in);
 			default:
 				Log.e(TAG, "Invalid memento version: " + version);
 				return false;
@@ -178,6 +217,68 @@ public class AndokuPuzzle {
 		return restoreFrom(values, regionErrors, cellErrors);
 	}
 
+	private boolean restoreFromVersion6(DataInput input) throws IOException {
+		MementoReader in = new MementoReader(input);
+
+		if (in.readVarint() != size) {
+			Log.e(TAG, "Memento size incorrect");
+			return false;
+		}
+
+		final ValueSet[][] values = obtainValues(problem);
+		final int invalidBits = ~ValueSet.allMask(size);
+
+		boolean[] filledIn = new boolean[size * size];
+		for (int idx = 0; idx < filledIn.length; idx++) {
+			filledIn[idx] = in.readBits(1) != 0;
+		}
+
+		for (int idx = 0; idx < filledIn.length; idx++) {
+			if (filledIn[idx]) {
+				int row = idx / size;
+				int col = idx % size;
+				if (isClue(row, col)) {
+					Log.e(TAG, "Memento overrides clue at " + row + "x" + col);
+					return false;
+				}
+
+				int mask = in.readVarint();
+				if ((mask & invalidBits) != 0) {
+					Log.e(TAG, "Memento value out of range at " + row + "x" + col);
+					return false;
+				}
+
+				values[row][col].setFromInt(mask);
+			}
+		}
+
+		final int numRegionErrors = in.readVarint();
+		final int numCellErrors = in.readVarint();
+
+		final int bitsPerCell = bitsPerCellIndex();
+		HashSet<RegionError> regionErrors = new HashSet<RegionError>(numRegionErrors);
+		for (int i = 0; i < numRegionErrors; i++) {
+			Position p1 = readPosition(in, bitsPerCell);
+			Position p2 = readPosition(in, bitsPerCell);
+			regionErrors.add(new RegionError(p1, p2));
+		}
+
+		HashSet<Position> cellErrors = new HashSet<Position>(numCellErrors);
+		for (int i = 0; i < numCellErrors; i++) {
+			cellErrors.add(readPosition(in, bitsPerCell));
+		}
+
+		return restoreFrom(values, regionErrors, cellErrors);
+	}
+
+	private Position readPosition(MementoReader in, int bitsPerCell) throws IOException {
+		int idx = in.readBits(bitsPerCell);
+		if (idx >= size * size)
+			throw new IOException("Invalid cell index: " + idx);
+
+		return new Position(idx / size, idx % size);
+	}
+
 	private boolean restoreFromSerializable(byte[] b) {
 		Log.d(TAG, "Restoring memento from Serializable (Andoku 1.0.0 - 1.2.1)");
 
@@ -223,7 +324,7 @@ public class AndokuPuzzle {
 		this.regionErrors = regionErrors;
 		this.cellErrors = cellErrors;
 
-		invalidateSolved();
+		initValueCounts();
 
 		return true;
 	}
@@ -240,6 +341,19 @@ public class AndokuPuzzle {
 		return puzzleType;
 	}
 
+	/**
+	 * Returns the fingerprint of the clues and geometry of this puzzle as computed by
+	 * {@link PuzzleCanonicalizer#getFingerprint(Puzzle)}. May be called from a background thread.
+	 */
+	public synchronized long getFingerprint() {
+		if (!fingerprintComputed) {
+			fingerprint = PuzzleCanonicalizer.forCurrentThread().getFingerprint(problem);
+			fingerprintComputed = true;
+		}
+
+		return fingerprint;
+	}
+
 	public Difficulty getDifficulty() {
 		return difficulty;
 	}
@@ -248,6 +362,18 @@ public class AndokuPuzzle {
 		return solution != null;
 	}
 
+	public Solution getSolution() {
+		return solution;
+	}
+
+	/**
+	 * Sets a solution that has been computed before, e.g. by {@link #computeSolution()} on another
+	 * instance of the same puzzle.
+	 */
+	public void setSolution(Solution solution) {
+		this.solution = solution;
+	}
+
 	public boolean computeSolution() {
 		if (this.solution != null)
 			throw new IllegalStateException();
@@ -256,7 +382,7 @@ public class AndokuPuzzle {
 			return false;
 
 		SingleSolutionReporter reporter = new SingleSolutionReporter();
-		PuzzleSolver solver = new DlxPuzzleSolver();
+		PuzzleSolver solver = new BitboardPuzzleSolver();
 		solver.solve(problem, reporter);
 
 		Puzzle solution = reporter.getSolution();
@@ -270,11 +396,7 @@ public class AndokuPuzzle {
 	}
 
 	public boolean isSolved() {
-		if (solved == null) {
-			solved = checkSolved();
-		}
-
-		return solved;
+		return numValuesSet == size * size && numConflicts == 0;
 	}
 
 	public int getSize() {
@@ -297,13 +419,33 @@ public class AndokuPuzzle {
 	}
 
 	public int getMissingValuesCount() {
-		if (numValuesSet == null) {
-			numValuesSet = countValuesSet();
-		}
-
 		return size * size - numValuesSet;
 	}
 
+	/**
+	 * Returns <code>true</code> if any region contains the same value more than once.
+	 */
+	public boolean hasRegionConflicts() {
+		return numConflicts != 0;
+	}
+
+	/**
+	 * Returns <code>true</code> if the value at the given position also occurs at another position
+	 * within one of its regions.
+	 */
+	public boolean isInConflict(int row, int col) {
+		final int mask = values[row][col].toInt();
+		if (!ValueSet.isSingle(mask))
+			return false;
+
+		final int value = Integer.numberOfTrailingZeros(mask);
+		for (Region region : problem.getRegionsAt(row, col))
+			if (valueCounts[region.id * size + value] > 1)
+				return true;
+
+		return false;
+	}
+
 	public boolean isClue(int row, int col) {
 		return problem.getValue(row, col) != Puzzle.UNDEFINED;
 	}
@@ -332,13 +474,27 @@ public class AndokuPuzzle {
 		return new ValueSet(values[row][col]);
 	}
 
+	/**
+	 * Returns the values at the given position as a bit mask without creating a copy.
+	 */
+	public int getValuesMask(int row, int col) {
+		return values[row][col].toInt();
+	}
+
 	public boolean setValues(int row, int col, ValueSet valueSet) {
 		if (values[row][col].equals(valueSet))
 			return false;
 
-		values[row][col].setFromInt(valueSet.toInt());
+		final int oldMask = values[row][col].toInt();
+		final int newMask = valueSet.toInt();
 
-		invalidateSolved();
+		if (ValueSet.isSingle(oldMask))
+			updateValueCounts(row, col, Integer.numberOfTrailingZeros(oldMask), -1);
+
+		values[row][col].setFromInt(newMask);
+
+		if (ValueSet.isSingle(newMask))
+			updateValueCounts(row, col, Integer.numberOfTrailingZeros(newMask), 1);
 
 		Position p = new Position(row, col);
 		if (removeError(p))
@@ -347,31 +503,34 @@ public class AndokuPuzzle {
 		return false;
 	}
 
-	private boolean checkSolved() {
-		if (getMissingValuesCount() != 0)
-			return false;
-
-		Position[] positionOfValue = new Position[size];
+	private void updateValueCounts(int row, int col, int value, int delta) {
+		for (Region region : problem.getRegionsAt(row, col)) {
+			final int idx = region.id * size + value;
+			final int count = valueCounts[idx];
+			valueCounts[idx] = count + delta;
 
-		for (Region region : problem.getRegions()) {
-			for (int value = 0; value < size; value++)
-				positionOfValue[value] = null;
-
-			for (Position p : region.positions) {
-				int value = values[p.row][p.col].nextValue(0);
-				if (positionOfValue[value] != null)
-					return false;
-
-				positionOfValue[value] = p;
+			if (delta > 0 && count == 1 || delta < 0 && count == 2) {
+				regionConflicts[region.id] += delta;
+				numConflicts += delta;
 			}
 		}
 
-		return true;
+		numValuesSet += delta;
 	}
 
-	private void invalidateSolved() {
-		solved = null;
-		numValuesSet = null;
+	private void initValueCounts() {
+		Arrays.fill(valueCounts, 0);
+		Arrays.fill(regionConflicts, 0);
+		numConflicts = 0;
+		numValuesSet = 0;
+
+		for (int row = 0; row < size; row++) {
+			for (int col = 0; col < size; col++) {
+				final int mask = values[row][col].toInt();
+				if (ValueSet.isSingle(mask))
+					updateValueCounts(row, col, Integer.numberOfTrailingZeros(mask), 1);
+			}
+		}
 	}
 
 	public boolean checkForErrors(boolean checkAgainstSolution) {
@@ -382,6 +541,9 @@ public class AndokuPuzzle {
 		Position[] positionOf = new Position[size];
 
 		for (Region region : problem.getRegions()) {
+			if (regionConflicts[region.id] == 0)
+				continue;
+
 			for (int value = 0; value < size; value++)
 				positionOf[value] = null;
 
@@ -624,19 +786,6 @@ public class AndokuPuzzle {
 		return values;
 	}
 
-	private int countValuesSet() {
-		final int size = values.length;
-
-		int count = 0;
-		for (int row = 0; row < size; row++) {
-			for (int col = 0; col < size; col++) {
-				if (values[row][col].size() == 1)
-					count++;
-			}
-		}
-		return count;
-	}
-
 	/**
 	 * Only maintained for backward compatibility. Andoku 1.0.0 - 1.2.1 used this class to save the
 	 * state of a puzzle. Andoku 1.2.2 and later directly write to a byte array instead.
@@ -685,18 +834,6 @@ public class AndokuPuzzle {
 		}
 	}
 
-	private static void writeValues(DataOutput out, ValueSet[][] values) throws IOException {
-		final int size = values.length;
-		out.writeChar(size);
-
-		for (int row = 0; row < size; row++) {
-			final ValueSet[] v = values[row];
-			for (int col = 0; col < size; col++) {
-				out.writeChar(v[col].toInt());
-			}
-		}
-	}
-
 	private static ValueSet[][] readValues(DataInput in) throws IOException {
 		final int size = in.readChar();
 		ValueSet[][] values = new ValueSet[size][size];
@@ -711,19 +848,6 @@ public class AndokuPuzzle {
 		return values;
 	}
 
-	private static void writeRegionErrors(DataOutput out, HashSet<RegionError> errors)
-			throws IOException {
-		final int numErrors = errors.size();
-		out.writeChar(numErrors);
-
-		for (RegionError error : errors) {
-			out.writeChar(error.p1.row);
-			out.writeChar(error.p1.col);
-			out.writeChar(error.p2.row);
-			out.writeChar(error.p2.col);
-		}
-	}
-
 	private static HashSet<RegionError> readRegionErrors(DataInput in) throws IOException {
 		final int numErrors = in.readChar();
 		HashSet<RegionError> errors = new HashSet<RegionError>(numErrors);
@@ -737,16 +861,6 @@ public class AndokuPuzzle {
 		return errors;
 	}
 
-	private static void writeCellErrors(DataOutput out, HashSet<Position> errors) throws IOException {
-		final int numErrors = errors.size();
-		out.writeChar(numErrors);
-
-		for (Position p : errors) {
-			out.writeChar(p.row);
-			out.writeChar(p.col);
-		}
-	}
-
 	private static HashSet<Position> readCellErrors(DataInput in) throws IOException {
 		final int numErrors = in.readChar();
 		HashSet<Position> errors = new HashSet<Position>(numErrors);
@@ -0,0 +1,52 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.model;
+
+/**
+ * 64 bit FNV-1a hash steps used for puzzle fingerprints and solution keys. Start with
+ * {@link #OFFSET_BASIS} and feed the values one by one.
+ */
+public final class Fnv1a {
+	public static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+
+	private static final long PRIME = 0x100000001b3L;
+
+	private Fnv1a() {
+	}
+
+	/**
+	 * Mixes the given value into the hash as a single unit. Suitable for small values.
+	 */
+	public static long update(long hash, int value) {
+		return (hash ^ value) * PRIME;
+	}
+
+	/**
+	 * Mixes the four bytes of the given value into the hash, least significant byte first.
+	 */
+	public static long updateBytes(long hash, int value) {
+		for (int i = 0; i < 4; i++) {
+			hash = (hash ^ (value & 0xff)) * PRIME;
+			value >>>= 8;
+		}
+		return hash;
+	}
+}
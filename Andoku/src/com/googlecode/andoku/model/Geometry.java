@@ -0,0 +1,322 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable layout of a puzzle: size, area codes, extra regions and the regions and peers derived
+ * from them. Instances are interned so that all puzzles with the same layout share one geometry.
+ */
+public final class Geometry {
+	private static final int MAX_INTERNED = 16;
+
+	private static final Map<Key, Geometry> interned = new LinkedHashMap<Key, Geometry>(
+			MAX_INTERNED, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Geometry> eldest) {
+			return size() > MAX_INTERNED;
+		}
+	};
+
+	final int size;
+	final int[][] areaCodes;
+	final ExtraRegion[] extraRegions;
+
+	final Region[] regions;
+	final Region[][][] regionsAt;
+	// region ids, indexed by row * size + col
+	final int[][] regionIdsAt;
+	// peer cells, indexed by row * size + col; only needed by Puzzle.force(), so built on demand
+	private volatile int[][] peers;
+
+	private Geometry(int[][] areaCodes, ExtraRegion[] extraRegions) {
+		checkParameters(areaCodes, extraRegions);
+
+		this.size = areaCodes.length;
+		this.areaCodes = new int[size][];
+		for (int row = 0; row < size; row++)
+			this.areaCodes[row] = areaCodes[row].clone();
+		this.extraRegions = extraRegions.clone();
+
+		regions = createRegions();
+		regionsAt = new Region[size][size][];
+		regionIdsAt = new int[size * size][];
+		initRegionsAt();
+	}
+
+	/**
+	 * Returns the geometry for the given area codes and extra regions. Equal layouts usually
+	 * result in the same instance.
+	 */
+	public static Geometry get(int[][] areaCodes, ExtraRegion[] extraRegions) {
+		Key key = new Key(areaCodes, extraRegions);
+
+		synchronized (interned) {
+			Geometry geometry = interned.get(key);
+			if (geometry != null)
+				return geometry;
+		}
+
+		Geometry geometry = new Geometry(areaCodes, extraRegions);
+
+		synchronized (interned) {
+			Geometry existing = interned.get(key);
+			if (existing != null)
+				return existing;
+
+			interned.put(key, geometry);
+		}
+
+		return geometry;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getAreaCode(int row, int col) {
+		return areaCodes[row][col];
+	}
+
+	public ExtraRegion[] getExtraRegions() {
+		return extraRegions;
+	}
+
+	public Region[] getRegions() {
+		return regions;
+	}
+
+	public Region[] getRegionsAt(int row, int col) {
+		return regionsAt[row][col];
+	}
+
+	/**
+	 * Returns the cells (as <code>row * size + col</code>) that share at least one region with
+	 * the given cell, excluding the cell itself. The returned array must not be modified.
+	 */
+	public int[] getPeers(int row, int col) {
+		int[][] peers = this.peers;
+		if (peers == null) {
+			// racing threads compute equal arrays, so no lock is needed
+			peers = initPeers();
+			this.peers = peers;
+		}
+
+		return peers[row * size + col];
+	}
+
+	private Region[] createRegions() {
+		List<Region> regions = new ArrayList<Region>();
+
+		int id = 0;
+
+		for (int row = 0; row < size; row++) {
+			List<Position> positions = new ArrayList<Position>();
+			for (int col = 0; col < size; col++)
+				positions.add(new Position(row, col));
+
+			regions.add(new Region(id++, Puzzle.REGION_TYPE_ROW, row, positions));
+		}
+
+		for (int col = 0; col < size; col++) {
+			List<Position> positions = new ArrayList<Position>();
+			for (int row = 0; row < size; row++)
+				positions.add(new Position(row, col));
+
+			regions.add(new Region(id++, Puzzle.REGION_TYPE_COLUMN, col, positions));
+		}
+
+		// checkParameters() guarantees that every area has exactly size cells
+		Position[][] areaPositions = new Position[size][size];
+		int[] areaCounts = new int[size];
+		for (int row = 0; row < size; row++)
+			for (int col = 0; col < size; col++) {
+				int areaCode = areaCodes[row][col];
+				areaPositions[areaCode][areaCounts[areaCode]++] = new Position(row, col);
+			}
+
+		for (int areaCode = 0; areaCode < size; areaCode++)
+			regions.add(new Region(id++, Puzzle.REGION_TYPE_AREA, areaCode,
+					areaPositions[areaCode]));
+
+		for (int extraNumber = 0; extraNumber < extraRegions.length; extraNumber++) {
+			ExtraRegion extraRegion = extraRegions[extraNumber];
+			regions.add(new Region(id++, Puzzle.REGION_TYPE_EXTRA, extraNumber,
+					extraRegion.positions));
+		}
+
+		return regions.toArray(new Region[regions.size()]);
+	}
+
+	private void initRegionsAt() {
+		int[] counts = new int[size * size];
+		for (Region region : regions)
+			for (Position position : region.positions)
+				counts[position.row * size + position.col]++;
+
+		for (int row = 0; row < size; row++)
+			for (int col = 0; col < size; col++) {
+				final int cell = row * size + col;
+				regionsAt[row][col] = new Region[counts[cell]];
+				regionIdsAt[cell] = new int[counts[cell]];
+				counts[cell] = 0;
+			}
+
+		for (Region region : regions)
+			for (Position position : region.positions) {
+				final int cell = position.row * size + position.col;
+				final int idx = counts[cell]++;
+				regionsAt[position.row][position.col][idx] = region;
+				regionIdsAt[cell][idx] = region.id;
+			}
+	}
+
+	private int[][] initPeers() {
+		int[][] peers = new int[size * size][];
+		boolean[] isPeer = new boolean[size * size];
+		int[] buffer = new int[size * size];
+		for (int row = 0; row < size; row++)
+			for (int col = 0; col < size; col++) {
+				final int cell = row * size + col;
+				int count = 0;
+				for (Region region : regionsAt[row][col]) {
+					for (Position position : region.positions) {
+						int peer = position.row * size + position.col;
+						if (peer != cell && !isPeer[peer]) {
+							isPeer[peer] = true;
+							buffer[count++] = peer;
+						}
+					}
+				}
+
+				int[] cellPeers = new int[count];
+				for (int idx = 0; idx < count; idx++) {
+					cellPeers[idx] = buffer[idx];
+					isPeer[buffer[idx]] = false;
+				}
+				Arrays.sort(cellPeers);
+				peers[cell] = cellPeers;
+			}
+		return peers;
+	}
+
+	private static void checkParameters(int[][] areaCodes, ExtraRegion[] extraRegions) {
+		int size = areaCodes.length;
+
+		if (size < 3 || size > ValueSet.MAX_SIZE)
+			throw new IllegalArgumentException("Invalid size: " + size);
+
+		int[] counters = new int[size];
+		for (int[] areaCodesRow : areaCodes) {
+			if (areaCodesRow.length != size)
+				throw new IllegalArgumentException("Invalid number of area code columns");
+
+			for (int areaCode : areaCodesRow) {
+				if (areaCode < 0 || areaCode >= size)
+					throw new IllegalArgumentException("Invalid area code: " + areaCode);
+
+				counters[areaCode]++;
+			}
+		}
+
+		for (int i = 0; i < counters.length; i++)
+			if (counters[i] != size)
+				throw new IllegalArgumentException("Invalid number of " + i + "'s: " + counters[i]);
+
+		for (ExtraRegion extraRegion : extraRegions) {
+			if (extraRegion.positions.length != size)
+				throw new IllegalArgumentException("Invalid extra region size: "
+						+ extraRegion.positions.length);
+
+			Set<Position> unique = new HashSet<Position>(Arrays.asList(extraRegion.positions));
+			if (unique.size() != size)
+				throw new IllegalArgumentException(
+						"Invalid number of unique positions in extra region");
+
+			for (Position position : extraRegion.positions)
+				if (position.row < 0 || position.col < 0 || position.row >= size
+						|| position.col >= size)
+					throw new IllegalArgumentException("Extra region position outside grid");
+		}
+	}
+
+	private static final class Key {
+		private final int[] layout;
+		private final int hashCode;
+
+		public Key(int[][] areaCodes, ExtraRegion[] extraRegions) {
+			final int size = areaCodes.length;
+
+			int length = 1;
+			for (int[] areaCodesRow : areaCodes)
+				length += 1 + areaCodesRow.length;
+			for (ExtraRegion extraRegion : extraRegions)
+				length += 1 + 2 * extraRegion.positions.length;
+
+			int[] layout = new int[length];
+
+			int idx = 0;
+			layout[idx++] = size;
+
+			for (int[] areaCodesRow : areaCodes) {
+				layout[idx++] = areaCodesRow.length;
+				for (int areaCode : areaCodesRow)
+					layout[idx++] = areaCode;
+			}
+
+			for (ExtraRegion extraRegion : extraRegions) {
+				layout[idx++] = extraRegion.positions.length;
+				for (Position position : extraRegion.positions) {
+					layout[idx++] = position.row;
+					layout[idx++] = position.col;
+				}
+			}
+
+			this.layout = layout;
+			this.hashCode = Arrays.hashCode(layout);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+
+			Key other = (Key) obj;
+			return hashCode == other.hashCode && Arrays.equals(layout, other.layout);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.model;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+/**
+ * Decodes the varints and bit fields written by {@link MementoWriter}.
+ */
+final class MementoReader {
+	private final DataInput in;
+
+	private int bitBuffer;
+	private int bitCount;
+
+	public MementoReader(DataInput in) {
+		this.in = in;
+	}
+
+	public int readVarint() throws IOException {
+		alignToByte();
+
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+
+		throw new IOException("Malformed varint");
+	}
+
+	public int readBits(int numberOfBits) throws IOException {
+		int value = 0;
+		for (int i = 0; i < numberOfBits; i++) {
+			if (bitCount == 0) {
+				bitBuffer = in.readUnsignedByte();
+				bitCount = 8;
+			}
+
+			bitCount--;
+			value = (value << 1) | ((bitBuffer >>> bitCount) & 1);
+		}
+		return value;
+	}
+
+	/**
+	 * Discards the padding bits of a partially consumed byte.
+	 */
+	public void alignToByte() {
+		bitCount = 0;
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.model;
+
+/**
+ * Encodes a puzzle memento into a growable byte array that is reused from one memento to the
+ * next. Supports big-endian shorts, unsigned varints and bit fields.
+ */
+final class MementoWriter {
+	private byte[] buffer;
+	private int length;
+
+	private int bitBuffer;
+	private int bitCount;
+
+	public MementoWriter(int initialCapacity) {
+		buffer = new byte[initialCapacity];
+	}
+
+	public void reset() {
+		length = 0;
+		bitBuffer = 0;
+		bitCount = 0;
+	}
+
+	public void writeShort(int value) {
+		writeByte(value >>> 8);
+		writeByte(value);
+	}
+
+	public void writeByte(int value) {
+		alignToByte();
+		put(value);
+	}
+
+	/**
+	 * Writes the given non-negative value seven bits at a time, least significant group first.
+	 */
+	public void writeVarint(int value) {
+		if (value < 0)
+			throw new IllegalArgumentException();
+
+		alignToByte();
+
+		while ((value & ~0x7f) != 0) {
+			put((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		put(value);
+	}
+
+	/**
+	 * Appends the lowest <code>numberOfBits</code> bits of the given value, most significant bit
+	 * first. Consecutive calls are packed without padding.
+	 */
+	public void writeBits(int value, int numberOfBits) {
+		for (int bit = numberOfBits - 1; bit >= 0; bit--) {
+			bitBuffer = (bitBuffer << 1) | ((value >>> bit) & 1);
+			if (++bitCount == 8) {
+				put(bitBuffer);
+				bitBuffer = 0;
+				bitCount = 0;
+			}
+		}
+	}
+
+	/**
+	 * Pads pending bits with zeros up to the next byte boundary.
+	 */
+	public void alignToByte() {
+		if (bitCount != 0)
+			writeBits(0, 8 - bitCount);
+	}
+
+	public byte[] toByteArray() {
+		alignToByte();
+
+		byte[] result = new byte[length];
+		System.arraycopy(buffer, 0, result, 0, length);
+		return result;
+	}
+
+	private void put(int value) {
+		if (length == buffer.length) {
+			byte[] newBuffer = new byte[buffer.length * 2];
+			System.arraycopy(buffer, 0, newBuffer, 0, length);
+			buffer = newBuffer;
+		}
+
+		buffer[length++] = (byte) value;
+	}
+}
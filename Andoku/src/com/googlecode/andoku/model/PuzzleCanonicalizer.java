@@ -0,0 +1,824 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.model;
+
+import com.googlecode.andoku.transfer.StandardAreas;
+
+/**
+ * Maps a puzzle to a canonical form that is the same for all puzzles that only differ by a
+ * relabeling of the digits and a transformation of the grid that maps the regions of the puzzle
+ * onto regions of the same kind.
+ * <p>
+ * Standard 9x9 puzzles are canonicalized under the full sudoku group: transposition, permutation
+ * of bands and stacks and permutation of rows and columns within a band or stack. All other
+ * puzzles (squiggly, X, hyper, percent, color) are canonicalized under the eight rotations and
+ * reflections of the grid. In that case areas and extra regions are transformed together with the
+ * clues, so two puzzles only end up with the same canonical form if the transformation also maps
+ * the geometry of one puzzle onto that of the other.
+ * <p>
+ * The canonical form is the lexicographically smallest clue string (with empty cells sorting
+ * before clues and digits numbered in order of their first appearance) that can be reached.
+ * <p>
+ * Instances keep scratch buffers and are not thread safe; reuse one instance per thread, for
+ * example the one returned by {@link #forCurrentThread()}.
+ */
+public class PuzzleCanonicalizer {
+	private static final ThreadLocal<PuzzleCanonicalizer> INSTANCES =
+			new ThreadLocal<PuzzleCanonicalizer>() {
+				@Override
+				protected PuzzleCanonicalizer initialValue() {
+					return new PuzzleCanonicalizer();
+				}
+			};
+
+	private static final int[][] PERMUTATIONS_2 = { { 0, 1 }, { 1, 0 } };
+	private static final int[][] PERMUTATIONS_3 = { { 0, 1, 2 }, { 0, 2, 1 }, { 1, 0, 2 },
+			{ 1, 2, 0 }, { 2, 0, 1 }, { 2, 1, 0 } };
+
+	// state layout for the sudoku group search
+	private static final int S_TRANSPOSED = 0;
+	private static final int S_USED_ROWS = 1;
+	private static final int S_BAND = 2;
+	private static final int S_NEXT_LABEL = 3;
+	private static final int S_TIES = 4;
+	private static final int S_COLS = 5;
+	private static final int S_LABELS = S_COLS + 9;
+	private static final int STATE_SIZE = S_LABELS + 10;
+
+	// sorts after all labels
+	private static final int NEW_DIGIT = 16;
+
+	private int size;
+
+	// canonical result: labels 1..size for clues, 0 for empty cells
+	private int[] canonical = new int[0];
+	// canonical geometry: area label and extra region labels of each cell
+	private int[] geometry = new int[0];
+
+	// scratch buffers for the dihedral search
+	private int[] cells = new int[0];
+	private int[] candidate = new int[0];
+	private int[] candidateGeometry = new int[0];
+	private int[] extraMasks = new int[0];
+	private int[] areaLabels = new int[0];
+	private int[] extraLabels = new int[0];
+	private int[] digitLabels = new int[0];
+
+	// scratch buffers for the sudoku group search
+	private final int[][] grids = new int[2][81];
+	private final long[] rows = new long[9];
+	private final int[] keys = new int[3];
+	private final int[] blockColumns = new int[3];
+	private final int[] work = new int[STATE_SIZE];
+	private final int[] groupStarts = new int[9];
+	private final int[] groupLengths = new int[9];
+	private final int[] groupColumns = new int[27];
+	private int[] states = new int[64 * STATE_SIZE];
+	private int[] nextStates = new int[64 * STATE_SIZE];
+	private int stateCount;
+	private int nextStateCount;
+	// state base offset and row of the transitions that produce the smallest row
+	private int[] candidates = new int[64];
+	private int candidateCount;
+	// columns that contain clues, indexed by transposed and row
+	private final int[][] clueColumns = new int[2][9];
+	// hash set of state indices plus one, used to drop equivalent states
+	private int[] stateTable = new int[256];
+	private int stateTableCount;
+
+	// the last set of extra regions checked for sudoku group invariance
+	private ExtraRegion[] lastExtraRegions;
+	private boolean lastInvariant;
+
+	public PuzzleCanonicalizer() {
+	}
+
+	/**
+	 * Returns an instance that is private to the calling thread.
+	 */
+	public static PuzzleCanonicalizer forCurrentThread() {
+		return INSTANCES.get();
+	}
+
+	/**
+	 * Returns the canonical clues of the given puzzle with '.' for empty cells and digits '1' to
+	 * '9' numbered in order of their first appearance.
+	 */
+	public String getCanonicalClues(Puzzle puzzle) {
+		canonicalize(puzzle);
+
+		final int length = size * size;
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = canonical[i] == 0 ? '.' : (char) ('0' + canonical[i]);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Returns a 64 bit fingerprint of the canonical form of the given puzzle, including its
+	 * geometry. Equivalent puzzles always have the same fingerprint.
+	 */
+	public long getFingerprint(Puzzle puzzle) {
+		canonicalize(puzzle);
+
+		long hash = Fnv1a.update(Fnv1a.OFFSET_BASIS, size);
+		final int length = size * size;
+		for (int i = 0; i < length; i++) {
+			hash = Fnv1a.updateBytes(hash, geometry[i]);
+		}
+		for (int i = 0; i < length; i++) {
+			hash = Fnv1a.update(hash, canonical[i]);
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns <code>true</code> if both puzzles have the same canonical form, i.e. if one can be
+	 * turned into the other by relabeling digits and transforming the grid. Unlike comparing
+	 * fingerprints this is not subject to hash collisions.
+	 */
+	public boolean isEquivalent(Puzzle puzzle1, Puzzle puzzle2) {
+		if (puzzle1.getSize() != puzzle2.getSize()
+				|| puzzle1.getExtraRegions().length != puzzle2.getExtraRegions().length)
+			return false;
+
+		canonicalize(puzzle1);
+
+		final int length = size * size;
+		int[] canonical1 = new int[length];
+		int[] geometry1 = new int[length];
+		System.arraycopy(canonical, 0, canonical1, 0, length);
+		System.arraycopy(geometry, 0, geometry1, 0, length);
+
+		canonicalize(puzzle2);
+
+		return compare(canonical1, canonical, length) == 0
+				&& compare(geometry1, geometry, length) == 0;
+	}
+
+	private void canonicalize(Puzzle puzzle) {
+		size = puzzle.getSize();
+		ensureCapacity(size * size, puzzle.getExtraRegions().length);
+
+		initCellsAndExtraMasks(puzzle);
+
+		if (size == 9 && hasStandardAreas(puzzle) && isSudokuGroupInvariant(puzzle)
+				&& canonicalizeSudoku()) {
+			computeGeometry(puzzle, 0, geometry);
+		}
+		else {
+			canonicalizeDihedral(puzzle);
+		}
+	}
+
+	private void ensureCapacity(int length, int extraRegionCount) {
+		if (canonical.length < length) {
+			canonical = new int[length];
+			geometry = new int[length];
+			cells = new int[length];
+			candidate = new int[length];
+			candidateGeometry = new int[length];
+			extraMasks = new int[length];
+		}
+		if (areaLabels.length < size) {
+			areaLabels = new int[size];
+			digitLabels = new int[size + 1];
+		}
+		if (extraLabels.length < extraRegionCount) {
+			extraLabels = new int[extraRegionCount];
+		}
+		if (extraRegionCount > 16)
+			throw new IllegalArgumentException();
+	}
+
+	private void initCellsAndExtraMasks(Puzzle puzzle) {
+		for (int row = 0; row < size; row++) {
+			for (int col = 0; col < size; col++) {
+				cells[row * size + col] = puzzle.getValue(row, col) + 1;
+				extraMasks[row * size + col] = 0;
+			}
+		}
+
+		ExtraRegion[] extraRegions = puzzle.getExtraRegions();
+		for (int i = 0; i < extraRegions.length; i++) {
+			for (Position position : extraRegions[i].positions) {
+				extraMasks[position.row * size + position.col] |= 1 << i;
+			}
+		}
+	}
+
+	private static boolean hasStandardAreas(Puzzle puzzle) {
+		final int size = puzzle.getSize();
+		int[][] stdAreas = StandardAreas.getAreas(size);
+
+		for (int row = 0; row < size; row++)
+			for (int col = 0; col < size; col++)
+				if (puzzle.getAreaCode(row, col) != stdAreas[row][col])
+					return false;
+
+		return true;
+	}
+
+	// checks whether the generators of the sudoku group (transposition, swapping two adjacent
+	// rows within the first band and swapping two adjacent bands) map the extra regions onto
+	// extra regions
+	private boolean isSudokuGroupInvariant(Puzzle puzzle) {
+		ExtraRegion[] extraRegions = puzzle.getExtraRegions();
+		if (extraRegions != lastExtraRegions) {
+			lastExtraRegions = extraRegions;
+			lastInvariant = checkSudokuGroupInvariant(extraRegions);
+		}
+		return lastInvariant;
+	}
+
+	private boolean checkSudokuGroupInvariant(ExtraRegion[] extraRegions) {
+		for (int generator = 0; generator < 5; generator++) {
+			for (ExtraRegion extraRegion : extraRegions) {
+				int mask = -1;
+				for (Position position : extraRegion.positions) {
+					int row = position.row;
+					int col = position.col;
+					switch (generator) {
+						case 0:
+							row = position.col;
+							col = position.row;
+							break;
+						case 1:
+						case 2:
+							int r = generator - 1;
+							row = row == r ? r + 1 : row == r + 1 ? r : row;
+							break;
+						default:
+							int b = (generator - 3) * 3;
+							row = row / 3 * 3 == b ? row + 3 : row / 3 * 3 == b + 3 ? row - 3 : row;
+							break;
+					}
+					// the image is an extra region if all cells are in a common extra region
+					mask &= extraMasks[row * size + col];
+				}
+				if (mask == 0)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private void canonicalizeDihedral(Puzzle puzzle) {
+		final int length = size * size;
+		boolean first = true;
+		for (int transform = 0; transform < 8; transform++) {
+			computeGeometry(puzzle, transform, candidateGeometry);
+			int cmp = first ? -1 : compare(candidateGeometry, geometry, length);
+			if (cmp > 0)
+				continue;
+
+			computeClues(transform, candidate);
+			if (cmp == 0 && compare(candidate, canonical, length) >= 0)
+				continue;
+
+			System.arraycopy(candidateGeometry, 0, geometry, 0, length);
+			System.arraycopy(candidate, 0, canonical, 0, length);
+			first = false;
+		}
+	}
+
+	private static int compare(int[] a, int[] b, int length) {
+		for (int i = 0; i < length; i++) {
+			if (a[i] != b[i])
+				return a[i] < b[i] ? -1 : 1;
+		}
+		return 0;
+	}
+
+	private int transformedIndex(int transform, int row, int col) {
+		if ((transform & 4) != 0) {
+			int tmp = row;
+			row = col;
+			col = tmp;
+		}
+		if ((transform & 1) != 0)
+			col = size - 1 - col;
+		if ((transform & 2) != 0)
+			row = size - 1 - row;
+		return row * size + col;
+	}
+
+	// area and extra region labels are assigned in order of first appearance
+	private void computeGeometry(Puzzle puzzle, int transform, int[] result) {
+		final int extraRegionCount = puzzle.getExtraRegions().length;
+		fill(areaLabels, 0, size, 0);
+		fill(extraLabels, 0, extraRegionCount, 0);
+		int nextAreaLabel = 0;
+		int nextExtraLabel = 0;
+
+		for (int row = 0; row < size; row++) {
+			for (int col = 0; col < size; col++) {
+				int source = transformedIndex(transform, row, col);
+
+				int areaCode = puzzle.getAreaCode(source / size, source % size);
+				if (areaLabels[areaCode] == 0)
+					areaLabels[areaCode] = ++nextAreaLabel;
+
+				int extraMask = extraMasks[source];
+				int labelMask = 0;
+				for (int i = 0; extraMask != 0; i++, extraMask >>>= 1) {
+					if ((extraMask & 1) != 0) {
+						if (extraLabels[i] == 0)
+							extraLabels[i] = ++nextExtraLabel;
+						labelMask |= 1 << (extraLabels[i] - 1);
+					}
+				}
+
+				result[row * size + col] = areaLabels[areaCode] << 16 | labelMask;
+			}
+		}
+	}
+
+	private void computeClues(int transform, int[] result) {
+		fill(digitLabels, 0, size + 1, 0);
+		int nextLabel = 0;
+
+		for (int row = 0; row < size; row++) {
+			for (int col = 0; col < size; col++) {
+				int value = cells[transformedIndex(transform, row, col)];
+				if (value != 0 && digitLabels[value] == 0)
+					digitLabels[value] = ++nextLabel;
+				result[row * size + col] = digitLabels[value];
+			}
+		}
+	}
+
+	// Search over the sudoku group. Rows are fixed one by one; after each step only those partial
+	// transformations that produce the smallest possible row survive. Columns are ordered lazily:
+	// columns that no row has told apart yet are kept in a tied block within their stack.
+	private boolean canonicalizeSudoku() {
+		for (int row = 0; row < 9; row++) {
+			for (int col = 0; col < 9; col++) {
+				grids[0][row * 9 + col] = cells[row * 9 + col];
+				grids[1][col * 9 + row] = cells[row * 9 + col];
+			}
+		}
+
+		// the lazy column ordering relies on every digit appearing at most once per row
+		for (int transposed = 0; transposed < 2; transposed++) {
+			for (int row = 0; row < 9; row++) {
+				int digits = 0;
+				int columns = 0;
+				for (int col = 0; col < 9; col++) {
+					int digit = grids[transposed][row * 9 + col];
+					if (digit == 0)
+						continue;
+					if ((digits & 1 << digit) != 0)
+						return false;
+					digits |= 1 << digit;
+					columns |= 1 << col;
+				}
+				clueColumns[transposed][row] = columns;
+			}
+		}
+
+		initFirstRow();
+
+		for (int depth = 1; depth < 9; depth++) {
+			long min = Long.MAX_VALUE;
+			candidateCount = 0;
+			for (int s = 0; s < stateCount; s++) {
+				final int base = s * STATE_SIZE;
+				final int usedRows = states[base + S_USED_ROWS];
+				for (int row = 0; row < 9; row++) {
+					if (!isCandidateRow(depth, usedRows, states[base + S_BAND], row))
+						continue;
+
+					long value = rowValue(base, row, min);
+					if (value < min) {
+						min = value;
+						candidateCount = 0;
+					}
+					if (value == min)
+						addCandidate(base, row);
+				}
+			}
+
+			nextStateCount = 0;
+			clearStateTable();
+			for (int i = 0; i < candidateCount; i++) {
+				addNextStates(candidates[i] >> 4, candidates[i] & 0xf);
+			}
+			swapStates();
+
+			rows[depth] = min;
+		}
+
+		for (int row = 0; row < 9; row++) {
+			long value = rows[row];
+			for (int col = 8; col >= 0; col--) {
+				canonical[row * 9 + col] = (int) (value & 0xf);
+				value >>>= 4;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isCandidateRow(int depth, int usedRows, int band, int row) {
+		if (depth % 3 == 0)
+			return (usedRows >> (row / 3 * 3) & 7) == 0;
+		else
+			return row / 3 == band && (usedRows & 1 << row) == 0;
+	}
+
+	// the first row only depends on the empty cells because all digits are new; it is smallest
+	// if the stacks are ordered by descending number of empty cells and the empty cells come first
+	// within each stack
+	private void initFirstRow() {
+		long min = Long.MAX_VALUE;
+		for (int transposed = 0; transposed < 2; transposed++) {
+			for (int row = 0; row < 9; row++) {
+				min = Math.min(min, firstRowValue(grids[transposed], row));
+			}
+		}
+		rows[0] = min;
+
+		nextStateCount = 0;
+		clearStateTable();
+		for (int transposed = 0; transposed < 2; transposed++) {
+			for (int row = 0; row < 9; row++) {
+				if (firstRowValue(grids[transposed], row) == min)
+					addFirstRowStates(transposed, row);
+			}
+		}
+		swapStates();
+	}
+
+	private static long firstRowValue(int[] grid, int row) {
+		int z0 = emptyCount(grid, row, 0);
+		int z1 = emptyCount(grid, row, 1);
+		int z2 = emptyCount(grid, row, 2);
+
+		// sort descending
+		int tmp;
+		if (z0 < z1) {
+			tmp = z0;
+			z0 = z1;
+			z1 = tmp;
+		}
+		if (z1 < z2) {
+			tmp = z1;
+			z1 = z2;
+			z2 = tmp;
+		}
+		if (z0 < z1) {
+			tmp = z0;
+			z0 = z1;
+			z1 = tmp;
+		}
+
+		long value = stackValue(0, z0, 0);
+		value = stackValue(value, z1, 3 - z0);
+		value = stackValue(value, z2, 6 - z0 - z1);
+		return value;
+	}
+
+	private static int emptyCount(int[] grid, int row, int stack) {
+		int count = 0;
+		for (int i = row * 9 + stack * 3, end = i + 3; i < end; i++) {
+			if (grid[i] == 0)
+				count++;
+		}
+		return count;
+	}
+
+	// appends a stack with the given number of leading empty cells followed by new digits
+	private static long stackValue(long value, int empty, int labelsUsed) {
+		for (int i = 0; i < 3; i++) {
+			value = value << 4 | (i < empty ? 0 : ++labelsUsed);
+		}
+		return value;
+	}
+
+	private void addFirstRowStates(int transposed, int row) {
+		final int[] grid = grids[transposed];
+		final int offset = row * 9;
+		final int[] empty = { emptyCount(grid, row, 0), emptyCount(grid, row, 1),
+				emptyCount(grid, row, 2) };
+
+		for (int[] stacks : PERMUTATIONS_3) {
+			if (empty[stacks[0]] < empty[stacks[1]] || empty[stacks[1]] < empty[stacks[2]])
+				continue;
+
+			int ties = 0;
+			int groupCount = 0;
+			int p = 0;
+			for (int i = 0; i < 3; i++) {
+				final int firstCol = stacks[i] * 3;
+				final int start = p;
+				for (int col = firstCol; col < firstCol + 3; col++) {
+					if (grid[offset + col] == 0)
+						work[S_COLS + p++] = col;
+				}
+				for (int q = start; q < p - 1; q++) {
+					ties |= 1 << q;
+				}
+
+				final int digitsStart = p;
+				for (int col = firstCol; col < firstCol + 3; col++) {
+					if (grid[offset + col] != 0)
+						work[S_COLS + p++] = col;
+				}
+				if (p - digitsStart > 1)
+					groupCount = addGroup(groupCount, digitsStart, p - digitsStart);
+			}
+
+			work[S_TRANSPOSED] = transposed;
+			work[S_USED_ROWS] = 1 << row;
+			work[S_BAND] = row / 3;
+			work[S_TIES] = ties;
+			work[S_NEXT_LABEL] = 0;
+			fill(work, S_LABELS, 10, 0);
+
+			addPermutedStates(grid, row, 0, groupCount);
+		}
+	}
+
+	private static void fill(int[] array, int offset, int length, int value) {
+		for (int i = offset, end = offset + length; i < end; i++)
+			array[i] = value;
+	}
+
+	private void addCandidate(int base, int row) {
+		if (candidateCount == candidates.length) {
+			int[] newCandidates = new int[candidates.length * 2];
+			System.arraycopy(candidates, 0, newCandidates, 0, candidateCount);
+			candidates = newCandidates;
+		}
+		candidates[candidateCount++] = base << 4 | row;
+	}
+
+	// Returns the smallest row that the given state can produce, taking all orderings of tied
+	// columns into account: empty cells first, then known digits by label, then new digits.
+	// Returns Long.MAX_VALUE as soon as the row is known to be greater than the given bound.
+	private long rowValue(int base, int row, long bound) {
+		final int[] grid = grids[states[base + S_TRANSPOSED]];
+		final int offset = row * 9;
+		final int ties = states[base + S_TIES];
+		int nextLabel = states[base + S_NEXT_LABEL];
+
+		long value = 0;
+		int position = 0;
+		while (position < 9) {
+			int end = position;
+			while ((ties & 1 << end) != 0)
+				end++;
+
+			final int length = end - position + 1;
+			for (int i = 0; i < length; i++) {
+				int digit = grid[offset + states[base + S_COLS + position + i]];
+				int label = states[base + S_LABELS + digit];
+				keys[i] = digit == 0 ? 0 : label != 0 ? label : NEW_DIGIT;
+			}
+			sort(keys, length);
+
+			for (int i = 0; i < length; i++, position++) {
+				int label = keys[i] == NEW_DIGIT ? ++nextLabel : keys[i];
+				value = value << 4 | label;
+				if (value > bound >>> (8 - position) * 4)
+					return Long.MAX_VALUE;
+			}
+		}
+		return value;
+	}
+
+	private static void sort(int[] array, int length) {
+		for (int i = 1; i < length; i++) {
+			int key = array[i];
+			int j = i - 1;
+			for (; j >= 0 && array[j] > key; j--)
+				array[j + 1] = array[j];
+			array[j + 1] = key;
+		}
+	}
+
+	// Orders the tied columns of the given state the way rowValue() does and adds one next state
+	// for every ordering of columns with new digits, since those determine the new labels.
+	private void addNextStates(int base, int row) {
+		System.arraycopy(states, base, work, 0, STATE_SIZE);
+
+		final int[] grid = grids[work[S_TRANSPOSED]];
+		final int offset = row * 9;
+		final int usedRows = work[S_USED_ROWS] | 1 << row;
+		final int band = row / 3;
+		work[S_USED_ROWS] = usedRows;
+		work[S_BAND] = (usedRows >> band * 3 & 7) == 7 ? -1 : band;
+
+		final int oldTies = work[S_TIES];
+		int ties = 0;
+		int groupCount = 0;
+		int position = 0;
+		while (position < 9) {
+			int end = position;
+			while ((oldTies & 1 << end) != 0)
+				end++;
+
+			final int length = end - position + 1;
+			if (length == 1) {
+				position++;
+				continue;
+			}
+
+			System.arraycopy(work, S_COLS + position, blockColumns, 0, length);
+
+			int p = position;
+			for (int i = 0; i < length; i++) {
+				if (grid[offset + blockColumns[i]] == 0)
+					work[S_COLS + p++] = blockColumns[i];
+			}
+			for (int q = position; q < p - 1; q++) {
+				ties |= 1 << q;
+			}
+
+			final int knownStart = p;
+			for (int i = 0; i < length; i++) {
+				int digit = grid[offset + blockColumns[i]];
+				int label = work[S_LABELS + digit];
+				if (digit != 0 && label != 0) {
+					int q = p++;
+					for (; q > knownStart && labelAt(grid, offset, q - 1) > label; q--)
+						work[S_COLS + q] = work[S_COLS + q - 1];
+					work[S_COLS + q] = blockColumns[i];
+				}
+			}
+
+			final int newStart = p;
+			for (int i = 0; i < length; i++) {
+				int digit = grid[offset + blockColumns[i]];
+				if (digit != 0 && work[S_LABELS + digit] == 0)
+					work[S_COLS + p++] = blockColumns[i];
+			}
+			if (p - newStart > 1)
+				groupCount = addGroup(groupCount, newStart, p - newStart);
+
+			position = end + 1;
+		}
+		work[S_TIES] = ties;
+
+		addPermutedStates(grid, row, 0, groupCount);
+	}
+
+	private int labelAt(int[] grid, int offset, int position) {
+		return work[S_LABELS + grid[offset + work[S_COLS + position]]];
+	}
+
+	private int addGroup(int groupCount, int start, int length) {
+		groupStarts[groupCount] = start;
+		groupLengths[groupCount] = length;
+		return groupCount + 1;
+	}
+
+	private void addPermutedStates(int[] grid, int row, int group, int groupCount) {
+		if (group == groupCount) {
+			addNextState(grid, row);
+			return;
+		}
+
+		final int start = S_COLS + groupStarts[group];
+		final int length = groupLengths[group];
+		final int columns = group * 3;
+		System.arraycopy(work, start, groupColumns, columns, length);
+		for (int[] permutation : length == 2 ? PERMUTATIONS_2 : PERMUTATIONS_3) {
+			for (int i = 0; i < length; i++) {
+				work[start + i] = groupColumns[columns + permutation[i]];
+			}
+			addPermutedStates(grid, row, group + 1, groupCount);
+		}
+	}
+
+	private void addNextState(int[] grid, int row) {
+		if ((nextStateCount + 1) * STATE_SIZE > nextStates.length) {
+			int[] newStates = new int[nextStates.length * 2];
+			System.arraycopy(nextStates, 0, newStates, 0, nextStateCount * STATE_SIZE);
+			nextStates = newStates;
+		}
+		final int next = nextStateCount++ * STATE_SIZE;
+		System.arraycopy(work, 0, nextStates, next, STATE_SIZE);
+
+		int nextLabel = nextStates[next + S_NEXT_LABEL];
+		for (int i = 0; i < 9; i++) {
+			int digit = grid[row * 9 + nextStates[next + S_COLS + i]];
+			if (digit != 0 && nextStates[next + S_LABELS + digit] == 0)
+				nextStates[next + S_LABELS + digit] = ++nextLabel;
+		}
+		nextStates[next + S_NEXT_LABEL] = nextLabel;
+
+		if (!addToStateTable(nextStates, nextStateCount))
+			nextStateCount--;
+	}
+
+	private void clearStateTable() {
+		fill(stateTable, 0, stateTable.length, 0);
+		stateTableCount = 0;
+	}
+
+	// Two states are equivalent if they will produce the same rows from now on. This is the case
+	// if they agree on everything but the order of the columns that are empty in all remaining
+	// rows. Dropping equivalent states keeps the search small for sparse puzzles.
+	private boolean addToStateTable(int[] buffer, int count) {
+		final int index = count - 1;
+		final int base = index * STATE_SIZE;
+		final int mask = stateTable.length - 1;
+		final int columns = remainingClueColumns(buffer, base);
+
+		int slot = stateHash(buffer, base, columns) & mask;
+		while (stateTable[slot] != 0) {
+			if (isEquivalentState(buffer, (stateTable[slot] - 1) * STATE_SIZE, base, columns))
+				return false;
+			slot = (slot + 1) & mask;
+		}
+		stateTable[slot] = index + 1;
+
+		if (++stateTableCount * 2 > stateTable.length) {
+			stateTable = new int[stateTable.length * 2];
+			stateTableCount = 0;
+			for (int i = 0; i < count; i++) {
+				int b = i * STATE_SIZE;
+				int s = stateHash(buffer, b, remainingClueColumns(buffer, b))
+						& (stateTable.length - 1);
+				while (stateTable[s] != 0)
+					s = (s + 1) & (stateTable.length - 1);
+				stateTable[s] = i + 1;
+				stateTableCount++;
+			}
+		}
+		return true;
+	}
+
+	private int remainingClueColumns(int[] buffer, int base) {
+		final int[] columns = clueColumns[buffer[base + S_TRANSPOSED]];
+		final int usedRows = buffer[base + S_USED_ROWS];
+		int result = 0;
+		for (int row = 0; row < 9; row++) {
+			if ((usedRows & 1 << row) == 0)
+				result |= columns[row];
+		}
+		return result;
+	}
+
+	private static int stateHash(int[] buffer, int base, int columns) {
+		int hash = buffer[base + S_TRANSPOSED];
+		hash = hash * 31 + buffer[base + S_USED_ROWS];
+		hash = hash * 31 + buffer[base + S_BAND];
+		hash = hash * 31 + buffer[base + S_TIES];
+		for (int i = 0; i < 9; i++) {
+			int col = buffer[base + S_COLS + i];
+			hash = hash * 31 + ((columns & 1 << col) != 0 ? col : -1);
+		}
+		for (int i = 1; i < 10; i++) {
+			hash = hash * 31 + buffer[base + S_LABELS + i];
+		}
+		return hash ^ hash >>> 16;
+	}
+
+	private static boolean isEquivalentState(int[] buffer, int base1, int base2, int columns) {
+		if (buffer[base1 + S_TRANSPOSED] != buffer[base2 + S_TRANSPOSED]
+				|| buffer[base1 + S_USED_ROWS] != buffer[base2 + S_USED_ROWS]
+				|| buffer[base1 + S_BAND] != buffer[base2 + S_BAND]
+				|| buffer[base1 + S_TIES] != buffer[base2 + S_TIES])
+			return false;
+
+		for (int i = 0; i < 9; i++) {
+			int col1 = buffer[base1 + S_COLS + i];
+			int col2 = buffer[base2 + S_COLS + i];
+			if (col1 != col2 && ((columns & 1 << col1) != 0 || (columns & 1 << col2) != 0))
+				return false;
+		}
+		for (int i = 1; i < 10; i++) {
+			if (buffer[base1 + S_LABELS + i] != buffer[base2 + S_LABELS + i])
+				return false;
+		}
+		return true;
+	}
+
+	private void swapStates() {
+		int[] tmp = states;
+		states = nextStates;
+		nextStates = tmp;
+		stateCount = nextStateCount;
+	}
+}
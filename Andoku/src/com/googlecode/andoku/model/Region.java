@@ -28,14 +28,12 @@ public final class Region {
 	public final String type;
 	public final int number;
 	public final Position[] positions;
-	public final ValueSet values;
 
 	public Region(int id, String type, int number, List<Position> positions) {
 		this.id = id;
 		this.type = type;
 		this.number = number;
 		this.positions = positions.toArray(new Position[positions.size()]);
-		values = new ValueSet();
 	}
 
 	public Region(int id, String type, int number, Position[] positions) {
@@ -43,7 +41,6 @@ public final class Region {
 		this.type = type;
 		this.number = number;
 		this.positions = positions;
-		values = new ValueSet();
 	}
 
 	public String getName() {
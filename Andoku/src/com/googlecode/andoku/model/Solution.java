@@ -42,7 +42,35 @@ public class Solution {
 		}
 	}
 
+	public int getSize() {
+		return solution.length;
+	}
+
 	public int getValue(int row, int col) {
 		return solution[row][col];
 	}
+
+	/**
+	 * Returns <code>true</code> if this solution has the size of the given puzzle, has a value in
+	 * every cell and agrees with all values already set in the puzzle.
+	 */
+	public boolean agreesWith(Puzzle puzzle) {
+		final int size = puzzle.getSize();
+		if (solution.length != size)
+			return false;
+
+		for (int row = 0; row < size; row++) {
+			for (int col = 0; col < size; col++) {
+				int value = solution[row][col];
+				if (value == Puzzle.UNDEFINED)
+					return false;
+
+				int clue = puzzle.getValue(row, col);
+				if (clue != Puzzle.UNDEFINED && clue != value)
+					return false;
+			}
+		}
+
+		return true;
+	}
 }
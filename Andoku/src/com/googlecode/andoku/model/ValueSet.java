@@ -23,6 +23,8 @@ package com.googlecode.andoku.model;
 public final class ValueSet {
 	public static final int MAX_SIZE = 16;
 
+	private static final int VALID_BITS = (1 << MAX_SIZE) - 1;
+
 	private int values;
 
 	public ValueSet() {
@@ -37,11 +39,7 @@ public final class ValueSet {
 	}
 
 	public static ValueSet all(int size) {
-		if (size <= 0 || size > MAX_SIZE)
-			throw new IllegalArgumentException();
-
-		int values = size < 32 ? (1 << size) - 1 : -1;
-		return new ValueSet(values);
+		return new ValueSet(allMask(size));
 	}
 
 	public static ValueSet none() {
@@ -61,6 +59,58 @@ public final class ValueSet {
 		return valueSet;
 	}
 
+	/**
+	 * Returns a bit mask containing all values from 0 to <code>size - 1</code>.
+	 */
+	public static int allMask(int size) {
+		if (size <= 0 || size > MAX_SIZE)
+			throw new IllegalArgumentException();
+
+		return (1 << size) - 1;
+	}
+
+	/**
+	 * Returns the number of values in the specified bit mask.
+	 */
+	public static int size(int mask) {
+		return Integer.bitCount(mask & VALID_BITS);
+	}
+
+	/**
+	 * Returns <code>true</code> if the specified bit mask contains exactly one value.
+	 */
+	public static boolean isSingle(int mask) {
+		return mask != 0 && (mask & (mask - 1)) == 0;
+	}
+
+	/**
+	 * Returns the lowest value in the specified bit mask that is greater than or equal to
+	 * <code>value</code> or -1 if there is no such value.
+	 */
+	public static int nextValue(int mask, int value) {
+		if (value >= MAX_SIZE)
+			return -1;
+
+		final int remaining = mask & VALID_BITS & (-1 << value);
+		return remaining == 0 ? -1 : Integer.numberOfTrailingZeros(remaining);
+	}
+
+	/**
+	 * Stores the values of the specified bit mask in ascending order in <code>array</code>.
+	 * 
+	 * @return the number of values.
+	 */
+	public static int getValues(int mask, int[] array) {
+		int remaining = mask & VALID_BITS;
+
+		int idx = 0;
+		while (remaining != 0) {
+			array[idx++] = Integer.numberOfTrailingZeros(remaining);
+			remaining &= remaining - 1;
+		}
+		return idx;
+	}
+
 	public int toInt() {
 		return values;
 	}
@@ -102,12 +152,7 @@ public final class ValueSet {
 	}
 
 	public int size() {
-		int count = 0;
-		for (int bit = 0; bit < MAX_SIZE; bit++) {
-			if ((values & 1 << bit) != 0)
-				count++;
-		}
-		return count;
+		return size(values);
 	}
 
 	public boolean isEmpty() {
@@ -115,20 +160,11 @@ public final class ValueSet {
 	}
 
 	public int nextValue(int value) {
-		for (int bit = value; bit < MAX_SIZE; bit++) {
-			if ((values & 1 << bit) != 0)
-				return bit;
-		}
-		return -1;
+		return nextValue(values, value);
 	}
 
 	public int getValues(int[] array) {
-		int idx = 0;
-		for (int bit = 0; bit < MAX_SIZE; bit++) {
-			if ((values & 1 << bit) != 0)
-				array[idx++] = bit;
-		}
-		return idx;
+		return getValues(values, array);
 	}
 
 	@Override
@@ -152,12 +188,12 @@ public final class ValueSet {
 		StringBuilder sb = new StringBuilder();
 		sb.append('[');
 
-		for (int bit = 0; bit < MAX_SIZE; bit++) {
-			if ((values & 1 << bit) != 0) {
-				if (sb.length() > 1)
-					sb.append(", ");
-				sb.append(bit);
-			}
+		int remaining = values & VALID_BITS;
+		while (remaining != 0) {
+			if (sb.length() > 1)
+				sb.append(", ");
+			sb.append(Integer.numberOfTrailingZeros(remaining));
+			remaining &= remaining - 1;
 		}
 
 		sb.append(']');
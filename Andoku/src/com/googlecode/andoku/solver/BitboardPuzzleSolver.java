@@ -0,0 +1,307 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.solver;
+
+import java.util.Random;
+
+import com.googlecode.andoku.model.Geometry;
+import com.googlecode.andoku.model.Position;
+import com.googlecode.andoku.model.Puzzle;
+import com.googlecode.andoku.model.Region;
+import com.googlecode.andoku.model.ValueSet;
+
+/**
+ * Puzzle solver that keeps the candidates of all cells as bit masks in a flat <code>int</code>
+ * array. Naked and hidden singles are propagated after every placement; the solver only branches
+ * if propagation stalls.
+ */
+public class BitboardPuzzleSolver implements PuzzleSolver {
+	private final Random random;
+
+	// lookup tables for the geometry of the last puzzle; only rebuilt if the geometry changes
+	private Geometry geometry;
+	private int size;
+	private int cells;
+	private int all;
+	// cells of every row, column, area and extra region
+	private int[][] regions;
+	// Geometry.getPeers() indexed by cell
+	private int[][] peers;
+
+	private Puzzle problem;
+	private Puzzle puzzle;
+	private PuzzleReporter reporter;
+
+	// candidates of every cell, one array per search level
+	private int[][] candidates;
+	// values to try, one array per search level
+	private int[][] choices;
+	// cells that became naked singles and still have to be propagated
+	private int[] queue;
+
+	public BitboardPuzzleSolver() {
+		this(null);
+	}
+
+	public BitboardPuzzleSolver(Random random) {
+		this.random = random;
+	}
+
+	public void solve(Puzzle puzzle, PuzzleReporter reporter) {
+		setGeometry(puzzle.getGeometry());
+		this.problem = puzzle;
+		this.puzzle = new Puzzle(puzzle);
+		this.reporter = reporter;
+
+		final int size = this.size;
+		final int cells = this.cells;
+		if (candidates == null || candidates[0].length != cells || choices[0].length != size) {
+			candidates = new int[cells + 1][cells];
+			choices = new int[cells + 1][size];
+			queue = new int[cells];
+		}
+
+		if (initialize(candidates[0]))
+			solve0(0);
+	}
+
+	private void setGeometry(Geometry geometry) {
+		if (geometry == this.geometry)
+			return;
+
+		size = geometry.getSize();
+		cells = size * size;
+		all = ValueSet.allMask(size);
+
+		Region[] geometryRegions = geometry.getRegions();
+		regions = new int[geometryRegions.length][];
+		for (int i = 0; i < geometryRegions.length; i++) {
+			Position[] positions = geometryRegions[i].positions;
+			regions[i] = new int[positions.length];
+			for (int j = 0; j < positions.length; j++)
+				regions[i][j] = positions[j].row * size + positions[j].col;
+		}
+
+		peers = new int[cells][];
+		for (int cell = 0; cell < cells; cell++)
+			peers[cell] = geometry.getPeers(cell / size, cell % size);
+
+		this.geometry = geometry;
+	}
+
+	private boolean initialize(int[] state) {
+		final int size = this.size;
+		final int cells = this.cells;
+		final int all = this.all;
+
+		for (int cell = 0; cell < cells; cell++)
+			state[cell] = all;
+
+		int tail = 0;
+		for (int row = 0; row < size; row++) {
+			for (int col = 0; col < size; col++) {
+				int value = puzzle.getValue(row, col);
+				if (value == Puzzle.UNDEFINED)
+					continue;
+
+				final int cell = row * size + col;
+				final int bit = 1 << value;
+				if ((state[cell] & bit) == 0)
+					return false;
+
+				state[cell] = bit;
+				queue[tail++] = cell;
+			}
+		}
+
+		return propagate(state, tail);
+	}
+
+	/**
+	 * Recursively solves the puzzle.
+	 * 
+	 * @return <code>true</code> if the calling recursion level should continue to find solutions,
+	 *         <code>false</code> otherwise.
+	 */
+	private boolean solve0(int level) {
+		final int[] state = candidates[level];
+
+		final int cell = findNextCell(state);
+		if (cell == -1)
+			return reportSolution(state);
+
+		final int[] values = choices[level];
+		final int count = ValueSet.getValues(state[cell], values);
+
+		if (random != null)
+			shuffle(values, count);
+
+		final int[] next = candidates[level + 1];
+		for (int i = 0; i < count; i++) {
+			System.arraycopy(state, 0, next, 0, state.length);
+
+			next[cell] = 1 << values[i];
+			queue[0] = cell;
+
+			if (propagate(next, 1) && !solve0(level + 1))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Propagates naked and hidden singles until nothing changes anymore.
+	 * 
+	 * @param tail number of naked singles in the queue that have yet to be propagated.
+	 * @return <code>false</code> if a contradiction has been found, <code>true</code> otherwise.
+	 */
+	private boolean propagate(int[] state, int tail) {
+		final int[][] peers = this.peers;
+		final int[] queue = this.queue;
+
+		while (true) {
+			int head = 0;
+			while (head < tail) {
+				final int cell = queue[head++];
+				final int bit = state[cell];
+
+				for (int peer : peers[cell]) {
+					final int mask = state[peer];
+					if ((mask & bit) == 0)
+						continue;
+
+					final int newMask = mask & ~bit;
+					if (newMask == 0)
+						return false;
+
+					state[peer] = newMask;
+					if ((newMask & (newMask - 1)) == 0)
+						queue[tail++] = peer;
+				}
+			}
+
+			tail = findHiddenSingles(state);
+			if (tail == 0)
+				return true;
+			if (tail < 0)
+				return false;
+		}
+	}
+
+	/**
+	 * Places all hidden singles and adds them to the queue.
+	 * 
+	 * @return the number of hidden singles found or -1 if a region cannot hold all values anymore.
+	 */
+	private int findHiddenSingles(int[] state) {
+		final int all = this.all;
+
+		int tail = 0;
+		for (int[] region : regions) {
+			int once = 0;
+			int twice = 0;
+			for (int cell : region) {
+				final int mask = state[cell];
+				twice |= once & mask;
+				once |= mask;
+			}
+
+			if (once != all)
+				return -1;
+
+			int hidden = once & ~twice;
+			while (hidden != 0) {
+				final int bit = hidden & -hidden;
+				hidden &= hidden - 1;
+
+				for (int cell : region) {
+					final int mask = state[cell];
+					if ((mask & bit) != 0) {
+						if (mask != bit) {
+							state[cell] = bit;
+							queue[tail++] = cell;
+						}
+						break;
+					}
+				}
+			}
+		}
+
+		return tail;
+	}
+
+	/**
+	 * Returns the unsolved cell with the lowest number of candidates or -1 if all cells are solved.
+	 */
+	private int findNextCell(int[] state) {
+		int minCount = Integer.MAX_VALUE;
+		int minCell = -1;
+
+		for (int cell = 0; cell < state.length; cell++) {
+			final int mask = state[cell];
+			if ((mask & (mask - 1)) == 0)
+				continue;
+
+			final int count = ValueSet.size(mask);
+			if (count < minCount) {
+				minCount = count;
+				minCell = cell;
+				if (count == 2)
+					break;
+			}
+		}
+
+		return minCell;
+	}
+
+	private void shuffle(int[] values, int count) {
+		for (int i = count; i > 1; i--) {
+			int idx1 = i - 1;
+			int idx2 = random.nextInt(i);
+			int tmp = values[idx1];
+			values[idx1] = values[idx2];
+			values[idx2] = tmp;
+		}
+	}
+
+	private boolean reportSolution(int[] state) {
+		final int size = this.size;
+
+		for (int cell = 0; cell < state.length; cell++) {
+			final int row = cell / size;
+			final int col = cell % size;
+			if (puzzle.getValue(row, col) == Puzzle.UNDEFINED)
+				puzzle.set(row, col, Integer.numberOfTrailingZeros(state[cell]));
+		}
+
+		boolean proceed = reporter.report(puzzle);
+
+		for (int cell = 0; cell < state.length; cell++) {
+			final int row = cell / size;
+			final int col = cell % size;
+			if (problem.getValue(row, col) == Puzzle.UNDEFINED)
+				puzzle.clear(row, col);
+		}
+
+		return proceed;
+	}
+}
@@ -26,6 +26,7 @@ import java.util.Set;
 
 import com.googlecode.andoku.model.Position;
 import com.googlecode.andoku.model.Puzzle;
+import com.googlecode.andoku.model.ValueSet;
 
 /**
  * Brute force puzzle solver.
@@ -87,7 +88,8 @@ public class BrutePuzzleSolver implements PuzzleSolver {
 	 */
 	private boolean solve0(Position position) {
 		final int[] values = new int[puzzle.getSize()];
-		final int count = puzzle.getPossibleValues(position.row, position.col).getValues(values);
+		final int possible = puzzle.getPossibleValuesMask(position.row, position.col);
+		final int count = ValueSet.getValues(possible, values);
 
 		if (random != null)
 			shuffle(values, count);
@@ -150,7 +152,7 @@ public class BrutePuzzleSolver implements PuzzleSolver {
 		Position minPosition = null;
 
 		for (Position position : undefinedPositions) {
-			int numPossible = puzzle.getPossibleValues(position.row, position.col).size();
+			int numPossible = ValueSet.size(puzzle.getPossibleValuesMask(position.row, position.col));
 			if (numPossible <= 1)
 				return position;
 
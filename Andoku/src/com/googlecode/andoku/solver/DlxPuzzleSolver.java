@@ -20,15 +20,13 @@
 
 package com.googlecode.andoku.solver;
 
-import java.util.Comparator;
 import java.util.Random;
 
-import com.googlecode.andoku.dlx.Data;
-import com.googlecode.andoku.dlx.Header;
-import com.googlecode.andoku.dlx.DlxListener;
-import com.googlecode.andoku.dlx.Matrix;
-import com.googlecode.andoku.dlx.RowSorter;
-import com.googlecode.andoku.dlx.Solver;
+import com.googlecode.andoku.dlx.ArrayColumnComparator;
+import com.googlecode.andoku.dlx.ArrayDlxListener;
+import com.googlecode.andoku.dlx.ArrayMatrix;
+import com.googlecode.andoku.dlx.ArrayRowSorter;
+import com.googlecode.andoku.dlx.ArraySolver;
 import com.googlecode.andoku.model.Puzzle;
 import com.googlecode.andoku.model.Region;
 
@@ -36,6 +34,13 @@ import com.googlecode.andoku.model.Region;
  * Puzzle solver that uses the Dancing Links (DLX) algorithm.
  */
 public class DlxPuzzleSolver implements PuzzleSolver {
+	private static final GeometryCache<ArrayMatrix<RCV>> TEMPLATES =
+			new GeometryCache<ArrayMatrix<RCV>>(new GeometryCache.Factory<ArrayMatrix<RCV>>() {
+				public ArrayMatrix<RCV> create(Puzzle puzzle) {
+					return createMatrix(puzzle);
+				}
+			});
+
 	protected final Random random;
 	private final long maxUpdates;
 
@@ -43,7 +48,9 @@ public class DlxPuzzleSolver implements PuzzleSolver {
 	protected Puzzle puzzle;
 	private PuzzleReporter reporter;
 
-	private long updates;
+	private ArrayMatrix<RCV> matrix;
+	private ArraySolver solver;
+	private boolean limitReached;
 
 	public DlxPuzzleSolver() {
 		this(null, 0);
@@ -53,13 +60,28 @@ public class DlxPuzzleSolver implements PuzzleSolver {
 		this(random, 0);
 	}
 
+	/**
+	 * @param maxUpdates if greater than zero {@link #solve(Puzzle, PuzzleReporter)} gives up after
+	 *           that many updates and returns without reporting any further solutions; check
+	 *           {@link #isLimitReached()} afterwards. To spread a search over several time slices
+	 *           without losing progress use {@link #start(Puzzle, PuzzleReporter)} and
+	 *           {@link #resume(long)} instead.
+	 */
 	public DlxPuzzleSolver(Random random, long maxUpdates) {
 		this.random = random;
 		this.maxUpdates = maxUpdates;
 	}
 
 	public long getNumberOfUpdates() {
-		return updates;
+		return solver != null ? solver.getNumberOfUpdates() : 0;
+	}
+
+	/**
+	 * Returns <code>true</code> if the last invocation of {@link #solve(Puzzle, PuzzleReporter)}
+	 * gave up because the maximum number of updates was reached.
+	 */
+	public boolean isLimitReached() {
+		return limitReached;
 	}
 
 	public void solve(Puzzle puzzle, PuzzleReporter reporter) {
@@ -70,73 +92,168 @@ public class DlxPuzzleSolver implements PuzzleSolver {
 		solve();
 	}
 
+	/**
+	 * Prepares a search of the specified puzzle without running it. The search is carried out by
+	 * invoking {@link #resume(long)} until it returns <code>true</code>. The puzzle passed to the
+	 * reporter is only valid for the duration of {@link PuzzleReporter#report(Puzzle)}.
+	 */
+	public void start(Puzzle puzzle, PuzzleReporter reporter) {
+		this.size = puzzle.getSize();
+		this.puzzle = new Puzzle(puzzle);
+		this.reporter = reporter;
+
+		prepare();
+	}
+
+	/**
+	 * Splits the search tree of the specified puzzle after <code>depth</code> placements. Each
+	 * partially solved puzzle at that depth is passed to the reporter, as is every complete solution
+	 * found above that depth. Solving all reported partial puzzles independently yields the same
+	 * solutions as solving the original puzzle.
+	 */
+	public void split(Puzzle puzzle, int depth, PuzzleReporter reporter) {
+		this.size = puzzle.getSize();
+		this.puzzle = new Puzzle(puzzle);
+		this.reporter = reporter;
+
+		ArrayMatrix<RCV> m = obtainMatrix();
+		eliminateGivenClues(m);
+
+		solver.reset();
+		solver.setMaxDepth(depth);
+		try {
+			solver.search();
+		}
+		finally {
+			solver.setMaxDepth(Integer.MAX_VALUE);
+		}
+	}
+
 	protected void solve() {
-		Matrix<RCV> m = createMatrix();
+		prepare();
+
+		limitReached = !solver.search(maxUpdates == 0 ? Long.MAX_VALUE : maxUpdates);
+		if (limitReached)
+			solver.abort();
+	}
+
+	private void prepare() {
+		ArrayMatrix<RCV> m = obtainMatrix();
 		eliminateGivenClues(m);
 
-		updates = 0;
-		Strategy strategy = new Strategy();
-		new Solver(m, strategy, strategy, strategy).search();
+		solver.reset();
+		limitReached = false;
+	}
+
+	/**
+	 * Continues the search started by {@link #start(Puzzle, PuzzleReporter)} for at most
+	 * <code>maxUpdates</code> more updates.
+	 * 
+	 * @return <code>true</code> if the search has finished, <code>false</code> if it has been
+	 *         paused.
+	 */
+	public boolean resume(long maxUpdates) {
+		if (solver == null)
+			throw new IllegalStateException();
+
+		return solver.search(maxUpdates);
+	}
+
+	/**
+	 * Returns <code>true</code> if a search started by {@link #start(Puzzle, PuzzleReporter)} has
+	 * been paused and can be continued by invoking {@link #resume(long)}.
+	 */
+	public boolean isPaused() {
+		return solver != null && !solver.isFinished();
+	}
+
+	/**
+	 * Gives up a paused search. Placements of the partial solution are undone.
+	 */
+	public void abort() {
+		if (solver != null)
+			solver.abort();
+	}
+
+	private ArrayMatrix<RCV> obtainMatrix() {
+		ArrayMatrix<RCV> template = TEMPLATES.get(puzzle);
+
+		if (matrix != null && matrix.getTotalColumnCount() == template.getTotalColumnCount()) {
+			matrix.copyFrom(template);
+		}
+		else {
+			matrix = new ArrayMatrix<RCV>(template);
+
+			Strategy strategy = new Strategy(matrix);
+			ArrayColumnComparator columnComparator = random != null ? strategy : null;
+			solver = new ArraySolver(matrix, strategy, columnComparator, strategy);
+		}
+
+		return matrix;
 	}
 
-	private Matrix<RCV> createMatrix() {
-		Matrix<RCV> m = new Matrix<RCV>();
+	private static ArrayMatrix<RCV> createMatrix(Puzzle puzzle) {
+		final int size = puzzle.getSize();
+		final Region[] regions = puzzle.getRegions();
+		final int cells = size * size;
+		final int regionOffset = cells;
+		final int numberOfColumns = cells + regions.length * size;
 
+		int nodes = 0;
 		for (int row = 0; row < size; row++)
-			for (int col = 0; col < size; col++) {
-				String name = row + "x" + col;
-				m.addColumn(new Header(name));
-			}
+			for (int col = 0; col < size; col++)
+				nodes += (1 + puzzle.getRegionsAt(row, col).length) * size;
 
-		final int regionOffset = m.getColumnCount();
-		for (Region region : puzzle.getRegions())
-			for (int v = 0; v < size; v++) {
-				String name = region.getName() + " value " + v;
-				m.addColumn(new Header(name, region));
-			}
+		ArrayMatrix<RCV> m = new ArrayMatrix<RCV>(numberOfColumns, cells * size, nodes);
+
+		int[] columns = new int[1 + regions.length];
 
 		for (int row = 0; row < size; row++)
 			for (int col = 0; col < size; col++) {
-				Region[] regions = puzzle.getRegionsAt(row, col);
+				Region[] regionsAt = puzzle.getRegionsAt(row, col);
 
 				for (int v = 0; v < size; v++) {
-					boolean[] values = new boolean[m.getColumnCount()];
+					int count = 0;
 
-					values[row * size + col] = true;
+					columns[count++] = row * size + col;
 
-					for (Region region : regions)
-						values[regionOffset + region.id * size + v] = true;
+					for (Region region : regionsAt)
+						columns[count++] = regionOffset + region.id * size + v;
 
-					m.addRow(new RCV(row, col, v), values);
+					m.addRow(new RCV(row, col, v), columns, count);
 				}
 			}
 
 		return m;
 	}
 
-	private void eliminateGivenClues(Matrix<RCV> m) {
+	private void eliminateGivenClues(ArrayMatrix<RCV> m) {
 		for (int row = 0; row < size; row++)
 			for (int col = 0; col < size; col++) {
 				int value = puzzle.getValue(row, col);
 				if (value != Puzzle.UNDEFINED) {
-					Data data = m.getRow(new RCV(row, col, value));
-					m.eliminateRow(data);
+					// rows have been added in row, column, value order
+					m.eliminateRow((row * size + col) * size + value);
 				}
 			}
 	}
 
-	private final class Strategy implements DlxListener, Comparator<Header>, RowSorter {
-		public Strategy() {
+	private final class Strategy implements ArrayDlxListener, ArrayColumnComparator,
+			ArrayRowSorter {
+		private final ArrayMatrix<RCV> m;
+
+		public Strategy(ArrayMatrix<RCV> m) {
+			this.m = m;
 		}
 
-		public boolean select(Data row) {
-			RCV r = (RCV) row.getPayload();
+		public boolean select(int row) {
+			RCV r = m.getPayload(row);
 			puzzle.set(r.row, r.col, r.value);
-			return maxUpdates == 0 || ++updates < maxUpdates;
+			return true;
 		}
 
-		public void deselect(Data row) {
-			RCV r = (RCV) row.getPayload();
+		public void deselect(int row) {
+			RCV r = m.getPayload(row);
 			puzzle.clear(r.row, r.col);
 		}
 
@@ -144,23 +261,23 @@ public class DlxPuzzleSolver implements PuzzleSolver {
 			return reporter.report(puzzle);
 		}
 
-		public int compare(Header c1, Header c2) {
-			final int diff = c1.getSize() - c2.getSize();
+		public int compare(ArrayMatrix<?> m, int c1, int c2) {
+			final int diff = m.getSize(c1) - m.getSize(c2);
 			if (diff != 0 || random == null)
 				return diff;
 
 			return random.nextBoolean() ? -1 : 1;
 		}
 
-		public void sort(Data[] rows) {
+		public void sort(int[] rows, int from, int to) {
 			if (random == null)
 				return;
 
-			for (int i = rows.length; i > 1; i--) {
-				int x = i - 1;
-				int y = random.nextInt(i);
+			for (int i = to - from; i > 1; i--) {
+				int x = from + i - 1;
+				int y = from + random.nextInt(i);
 
-				Data tmp = rows[x];
+				int tmp = rows[x];
 				rows[x] = rows[y];
 				rows[y] = tmp;
 			}
@@ -0,0 +1,77 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.solver;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.googlecode.andoku.model.Geometry;
+import com.googlecode.andoku.model.Puzzle;
+
+/**
+ * Cache of data structures that only depend on the geometry of a puzzle (area codes and extra
+ * regions) but not on its clues. Cached values are shared and must never be modified. Entries are
+ * keyed by the interned {@link Geometry} instance.
+ */
+final class GeometryCache<V> {
+	public interface Factory<V> {
+		V create(Puzzle puzzle);
+	}
+
+	private static final int MAX_ENTRIES = 16;
+
+	private final Factory<V> factory;
+
+	private final Map<Geometry, V> entries = new LinkedHashMap<Geometry, V>(MAX_ENTRIES,
+			0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Geometry, V> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	public GeometryCache(Factory<V> factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * Returns the cached value for the geometry of the specified puzzle, creating it if necessary.
+	 */
+	public V get(Puzzle puzzle) {
+		Geometry key = puzzle.getGeometry();
+
+		synchronized (entries) {
+			V value = entries.get(key);
+			if (value != null)
+				return value;
+		}
+
+		V value = factory.create(puzzle);
+
+		synchronized (entries) {
+			entries.put(key, value);
+		}
+
+		return value;
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Andoku - a sudoku puzzle game for Android.
+ * Copyright (C) 2011  Markus Wiederkehr
+ *
+ * This file is part of Andoku.
+ *
+ * Andoku is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Andoku is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Andoku.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.googlecode.andoku.solver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.googlecode.andoku.model.Puzzle;
+
+/**
+ * Counts the solutions of a sudoku puzzle on multiple threads. The DLX search tree is split after
+ * the first few placements and the resulting subproblems are solved independently, each by its own
+ * {@link DlxPuzzleSolver} working on its own matrix.
+ */
+public class ParallelSolutionCounter {
+	private static final int DEFAULT_SPLIT_DEPTH = 2;
+
+	private final ExecutorService executor;
+	private final int splitDepth;
+
+	public ParallelSolutionCounter(ExecutorService executor) {
+		this(executor, DEFAULT_SPLIT_DEPTH);
+	}
+
+	public ParallelSolutionCounter(ExecutorService executor, int splitDepth) {
+		if (executor == null)
+			throw new NullPointerException();
+		if (splitDepth < 1)
+			throw new IllegalArgumentException();
+
+		this.executor = executor;
+		this.splitDepth = splitDepth;
+	}
+
+	/**
+	 * Counts the solutions of the specified puzzle.
+	 * 
+	 * @param puzzle puzzle to solve.
+	 * @param maxSolutions the search stops as soon as this many solutions have been found; 0 means
+	 *           no limit.
+	 * @return the number of solutions, at most <code>maxSolutions</code> if a limit was given.
+	 */
+	public long countSolutions(Puzzle puzzle, long maxSolutions) throws InterruptedException {
+		if (maxSolutions < 0)
+			throw new IllegalArgumentException();
+
+		final long limit = maxSolutions == 0 ? Long.MAX_VALUE : maxSolutions;
+		final AtomicLong total = new AtomicLong();
+
+		SplitReporter splitReporter = new SplitReporter(total, limit);
+		new DlxPuzzleSolver().split(puzzle, splitDepth, splitReporter);
+
+		List<Future<Long>> futures = new ArrayList<Future<Long>>(splitReporter.subproblems.size());
+		for (Puzzle subproblem : splitReporter.subproblems)
+			futures.add(executor.submit(new CountTask(subproblem, total, limit)));
+
+		long count = splitReporter.solutions;
+		try {
+			for (Future<Long> future : futures)
+				count += future.get();
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+		finally {
+			for (Future<Long> future : futures)
+				future.cancel(true);
+		}
+
+		return Math.min(count, limit);
+	}
+
+	private static final class SplitReporter implements PuzzleReporter {
+		private final AtomicLong total;
+		private final long limit;
+
+		private final List<Puzzle> subproblems = new ArrayList<Puzzle>();
+		private long solutions;
+
+		public SplitReporter(AtomicLong total, long limit) {
+			this.total = total;
+			this.limit = limit;
+		}
+
+		public boolean report(Puzzle puzzle) {
+			if (!puzzle.isSolved()) {
+				subproblems.add(new Puzzle(puzzle));
+				return true;
+			}
+
+			solutions++;
+			return total.incrementAndGet() < limit;
+		}
+	}
+
+	private static final class CountTask implements Callable<Long>, PuzzleReporter {
+		private final Puzzle subproblem;
+		private final AtomicLong total;
+		private final long limit;
+
+		private long solutions;
+
+		public CountTask(Puzzle subproblem, AtomicLong total, long limit) {
+			this.subproblem = subproblem;
+			this.total = total;
+			this.limit = limit;
+		}
+
+		public Long call() {
+			if (total.get() < limit)
+				new DlxPuzzleSolver().solve(subproblem, this);
+
+			return solutions;
+		}
+
+		public boolean report(Puzzle solution) {
+			solutions++;
+			return total.incrementAndGet() < limit && !Thread.currentThread().isInterrupted();
+		}
+	}
+}
@@ -20,13 +20,11 @@
 
 package com.googlecode.andoku.source;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Map;
 
 import android.content.res.AssetManager;
 
@@ -37,40 +35,126 @@ import com.googlecode.andoku.transfer.PuzzleDecoder;
 class AssetsPuzzleSource implements PuzzleSource {
 	private static final String PUZZLES_FOLDER = "puzzles/";
 
+	// byte offsets of all entries of an asset file, by folder name
+	private static final Map<String, int[]> INDEXES = new HashMap<String, int[]>();
+
 	private final AssetManager assets;
 	private final String folderName;
 
-	private final List<String> entries;
+	private final int[] index;
+
+	private byte[] content;
 
 	public AssetsPuzzleSource(AssetManager assets, String folderName) {
 		this.assets = assets;
 		this.folderName = folderName;
 
-		this.entries = loadEntries();
+		this.index = getIndex();
+	}
+
+	private int[] getIndex() {
+		synchronized (INDEXES) {
+			int[] index = INDEXES.get(folderName);
+			if (index == null) {
+				index = createIndex();
+				INDEXES.put(folderName, index);
+			}
+			return index;
+		}
+	}
+
+	private int[] createIndex() {
+		int[] offsets = new int[128];
+		int count = 0;
+
+		try {
+			InputStream in = assets.open(getPuzzleFile());
+			try {
+				byte[] buffer = new byte[1024];
+
+				int offset = 0;
+				boolean lineStart = true;
+				while (true) {
+					int bytes = in.read(buffer);
+					if (bytes == -1)
+						break;
+
+					for (int i = 0; i < bytes; i++, offset++) {
+						byte b = buffer[i];
+						if (lineStart && b != '\n' && b != '\r' && b != '#') {
+							if (count == offsets.length) {
+								int[] newOffsets = new int[count * 2];
+								System.arraycopy(offsets, 0, newOffsets, 0, count);
+								offsets = newOffsets;
+							}
+
+							offsets[count++] = offset;
+						}
+
+						lineStart = b == '\n';
+					}
+				}
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) {
+			throw new AssetsPuzzleSourceException(e);
+		}
+
+		int[] index = new int[count];
+		System.arraycopy(offsets, 0, index, 0, count);
+		return index;
 	}
 
-	private List<String> loadEntries() {
-		List<String> entries = new ArrayList<String>(100);
+	private String readEntry(int offset) {
+		byte[] content = getContent();
+
+		int end = indexOfLineEnd(content, offset, content.length);
+		if (end == -1)
+			end = content.length;
 
 		try {
-			String puzzleFile = PUZZLES_FOLDER + folderName + ".adk";
+			return new String(content, offset, end - offset, "US-ASCII");
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new AssetsPuzzleSourceException(e);
+		}
+	}
 
-			InputStream in = assets.open(puzzleFile);
+	// aapt compresses .adk assets so they cannot be seeked; the whole file gets inflated once per
+	// source and subsequent loads only slice the buffer
+	private synchronized byte[] getContent() {
+		if (content == null)
+			content = readContent();
+
+		return content;
+	}
+
+	private byte[] readContent() {
+		try {
+			InputStream in = assets.open(getPuzzleFile());
 			try {
-				Reader reader = new InputStreamReader(in, "US-ASCII");
-				BufferedReader br = new BufferedReader(reader, 512);
+				byte[] buffer = new byte[16 * 1024];
+				int length = 0;
 				while (true) {
-					String line = br.readLine();
-					if (line == null)
+					if (length == buffer.length) {
+						byte[] newBuffer = new byte[length * 2];
+						System.arraycopy(buffer, 0, newBuffer, 0, length);
+						buffer = newBuffer;
+					}
+
+					int bytes = in.read(buffer, length, buffer.length - length);
+					if (bytes == -1)
 						break;
 
-					if (line.length() == 0 || line.startsWith("#"))
-						continue;
-						
-						entries.add(line);
+					length += bytes;
 				}
 
-				return entries;
+				byte[] content = new byte[length];
+				System.arraycopy(buffer, 0, content, 0, length);
+				return content;
 			}
 			finally {
 				in.close();
@@ -81,16 +165,31 @@ class AssetsPuzzleSource implements PuzzleSource {
 		}
 	}
 
+	private static int indexOfLineEnd(byte[] bytes, int from, int to) {
+		for (int i = from; i < to; i++)
+			if (bytes[i] == '\n' || bytes[i] == '\r')
+				return i;
+
+		return -1;
+	}
+
+	private String getPuzzleFile() {
+		return PUZZLES_FOLDER + folderName + ".adk";
+	}
+
 	public String getSourceId() {
 		return PuzzleSourceIds.forAssetFolder(folderName);
 	}
 
 	public int numberOfPuzzles() {
-		return entries.size();
+		return index.length;
 	}
 
 	public PuzzleHolder load(int number) {
-		String puzzleStr = entries.get(number);
+		if (number < 0 || number >= index.length)
+			throw new IndexOutOfBoundsException("Puzzle " + number + " not found in " + folderName);
+
+		String puzzleStr = readEntry(index[number]);
 
 		Puzzle puzzle = PuzzleDecoder.decode(puzzleStr);
 
@@ -105,6 +204,7 @@ class AssetsPuzzleSource implements PuzzleSource {
 		return Difficulty.values()[difficulty];
 	}
 
-	public void close() {
+	public synchronized void close() {
+		content = null;
 	}
 }
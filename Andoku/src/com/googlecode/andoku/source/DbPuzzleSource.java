@@ -66,7 +66,7 @@ class DbPuzzleSource implements PuzzleSource {
 	}
 
 	private Puzzle createPuzzle(PuzzleInfo puzzleInfo) {
-		return PuzzleDecoder.decode(puzzleInfo.getClues() + "|" + puzzleInfo.getAreas() + "|"
-				+ puzzleInfo.getExtraRegions());
+		return PuzzleDecoder.decode(puzzleInfo.getClues(), puzzleInfo.getAreas(), puzzleInfo
+				.getExtraRegions());
 	}
 }
@@ -22,6 +22,7 @@ package com.googlecode.andoku.transfer;
 
 import com.googlecode.andoku.model.ExtraRegion;
 import com.googlecode.andoku.model.ExtraRegions;
+import com.googlecode.andoku.model.Geometry;
 import com.googlecode.andoku.model.Puzzle;
 import com.googlecode.andoku.model.Solution;
 
@@ -29,29 +30,55 @@ public class PuzzleDecoder {
 	private PuzzleDecoder() {
 	}
 
+	// number of distinct geometries to keep templates for; only standard areas are cached, so
+	// this covers every combination of size and extra regions in use
+	private static final int TEMPLATE_CACHE_SIZE = 16;
+
+	// geometries of recently decoded puzzles with standard areas, looked up without parsing the
+	// extra regions
+	private static final Template[] templates = new Template[TEMPLATE_CACHE_SIZE];
+	private static int nextTemplate = 0;
+
 	// format: clues|areas|x
 	public static Puzzle decode(String puzzleStr) {
-		String[] parts = puzzleStr.split("\\|");
-		if (parts.length == 0)
-			throw new IllegalArgumentException();
+		final int length = puzzleStr.length();
+		int cluesEnd = puzzleStr.indexOf('|');
+		if (cluesEnd == -1)
+			cluesEnd = length;
+
+		int areasStart = Math.min(cluesEnd + 1, length);
+		int areasEnd = puzzleStr.indexOf('|', areasStart);
+		if (areasEnd == -1)
+			areasEnd = length;
+
+		int extraStart = Math.min(areasEnd + 1, length);
+		int extraEnd = puzzleStr.indexOf('|', extraStart);
+		if (extraEnd == -1)
+			extraEnd = length;
+
+		return decode(puzzleStr, 0, cluesEnd, puzzleStr, areasStart, areasEnd, puzzleStr,
+				extraStart, extraEnd);
+	}
 
-		String clues = parts[0];
-		String areas = parts.length > 1 ? parts[1] : "";
-		String extra = parts.length > 2 ? parts[2] : "";
+	public static Puzzle decode(String clues, String areas, String extra) {
+		return decode(clues, 0, clues.length(), areas, 0, areas.length(), extra, 0, extra.length());
+	}
 
-		int size = (int) Math.sqrt(clues.length());
-		if (clues.length() != size * size)
+	private static Puzzle decode(String clues, int cluesStart, int cluesEnd, String areas,
+			int areasStart, int areasEnd, String extra, int extraStart, int extraEnd) {
+		final int cluesLength = cluesEnd - cluesStart;
+		int size = (int) Math.sqrt(cluesLength);
+		if (cluesLength != size * size)
 			throw new IllegalArgumentException();
 
 		if (size < 5 || size > 9)
 			throw new IllegalArgumentException();
 
-		int[][] areaCodes = parseAreaCodes(size, areas);
-		ExtraRegion[] extraRegions = parseExtraRegions(size, extra);
-
-		Puzzle puzzle = new Puzzle(areaCodes, extraRegions);
+		Geometry geometry = getGeometry(size, areas, areasStart, areasEnd, extra, extraStart,
+				extraEnd);
+		Puzzle puzzle = new Puzzle(geometry);
 
-		int idx = 0;
+		int idx = cluesStart;
 		for (int row = 0; row < size; row++) {
 			for (int col = 0; col < size; col++) {
 				char clueChar = clues.charAt(idx++);
@@ -69,6 +96,40 @@ public class PuzzleDecoder {
 		return puzzle;
 	}
 
+	private static Geometry getGeometry(int size, String areas, int areasStart, int areasEnd,
+			String extra, int extraStart, int extraEnd) {
+		final int extraLength = extraEnd - extraStart;
+
+		// squiggly folders use a different layout for almost every puzzle; caching templates
+		// for them would only evict the standard layouts
+		if (areasEnd != areasStart) {
+			int[][] areaCodes = parseAreaCodes(size, areas.substring(areasStart, areasEnd));
+			ExtraRegion[] extraRegions = parseExtraRegions(size, extra.substring(extraStart,
+					extraEnd));
+			return Geometry.get(areaCodes, extraRegions);
+		}
+
+		synchronized (templates) {
+			for (Template template : templates) {
+				if (template != null && template.size == size
+						&& template.extra.length() == extraLength
+						&& template.extra.regionMatches(0, extra, extraStart, extraLength))
+					return template.geometry;
+			}
+		}
+
+		String extraStr = extra.substring(extraStart, extraEnd);
+		ExtraRegion[] extraRegions = parseExtraRegions(size, extraStr);
+		Geometry geometry = Geometry.get(StandardAreas.getAreas(size), extraRegions);
+
+		synchronized (templates) {
+			templates[nextTemplate] = new Template(size, extraStr, geometry);
+			nextTemplate = (nextTemplate + 1) % TEMPLATE_CACHE_SIZE;
+		}
+
+		return geometry;
+	}
+
 	public static Solution decodeValues(String values) {
 		int size = (int) Math.sqrt(values.length());
 		if (values.length() != size * size)
@@ -149,4 +210,16 @@ public class PuzzleDecoder {
 		else
 			throw new IllegalArgumentException();
 	}
+
+	private static final class Template {
+		final int size;
+		final String extra;
+		final Geometry geometry;
+
+		Template(int size, String extra, Geometry geometry) {
+			this.size = size;
+			this.extra = extra;
+			this.geometry = geometry;
+		}
+	}
 }